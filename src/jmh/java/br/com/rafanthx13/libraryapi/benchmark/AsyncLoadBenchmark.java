@@ -0,0 +1,96 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Teste de carga por HTTP de verdade (Tomcat embutido, não MockMvc), comparando library.async.enabled=false/true
+com o mesmo número de threads do Tomcat (e o mesmo número de threads no executor de JPA no modo assíncrono):
++ 'search': 48 clientes em GET /api/loans?isbn=&customer= (consulta pesada no banco)
++ 'probe': 16 clientes em GET /actuator/health ao mesmo tempo
+No modo síncrono as buscas ocupam todas as threads do Tomcat e o probe espera na fila; no assíncrono o Tomcat
+continua atendendo enquanto o banco trabalha. Compare o throughput e os percentis do grupo 'probe'
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class AsyncLoadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AsyncLoadState extends LibraryApiState {
+
+        @Param({"false", "true"})
+        public boolean async;
+
+        @Param("16")
+        public int threads;
+
+        @Override
+        protected List<String> arguments() {
+            List<String> arguments = super.arguments();
+            arguments.add("--library.async.enabled=" + async);
+            arguments.add("--library.async.threads=" + threads);
+            arguments.add("--server.tomcat.max-threads=" + threads);
+            return arguments;
+        }
+
+        String url(String path) {
+            return "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + path;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(48)
+    public int search(AsyncLoadState state) throws IOException {
+        long n = ThreadLocalRandom.current().nextLong(state.loans);
+        return get(state.url("/api/loans?page=0&size=20&isbn=" + state.existingIsbn(n)
+                + "&customer=" + state.existingCustomer(n)));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public int probe(AsyncLoadState state) throws IOException {
+        return get(state.url("/actuator/health"));
+    }
+
+    // Lê a resposta inteira para a conexão voltar ao keep-alive do HttpURLConnection
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        int status = connection.getResponseCode();
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[8192];
+            while (body != null && body.read(buffer) != -1) {
+                // descarta
+            }
+        }
+        return status;
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends AsyncLoadBenchmark {
+    }
+}
@@ -0,0 +1,89 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/*
+"Esse livro está disponível?": a consulta no banco (existsByBookAndNotReturned) contra o índice em memória direto
+(database x memory) e pela API, via GET /api/books/{id}/availability (um livro) e POST /api/books/availability ('size' isbns por requisição)
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class AvailabilityBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        @Param("1000")
+        public int size;
+
+        String json;
+
+        @Setup
+        public void prepare(LibraryApiState state) {
+            long start = ThreadLocalRandom.current().nextLong(state.books);
+            json = LongStream.range(start, start + size)
+                    .mapToObj(n -> "\"" + state.existingIsbn(n) + "\"")
+                    .collect(Collectors.joining(",", "[", "]"));
+        }
+    }
+
+    @Benchmark
+    public boolean database(LibraryApiState state) {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.context.getBean(LoanRepository.class).existsByBookAndNotReturned(Book.builder().id(id).build());
+    }
+
+    @Benchmark
+    public boolean memory(LibraryApiState state) {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.context.getBean(BookAvailabilityIndex.class).isAvailable(id);
+    }
+
+    @Benchmark
+    public int single(LibraryApiState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id + "/availability")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int batch(LibraryApiState state, Batch batch) throws Exception {
+        return state.mvc.perform(post("/api/books/availability")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(batch.json))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends AvailabilityBenchmark {
+    }
+}
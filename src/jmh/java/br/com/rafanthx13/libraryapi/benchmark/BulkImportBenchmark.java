@@ -0,0 +1,58 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.controller.NdjsonResponse;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// POST /api/books/import com 100k livros novos por chamada; o resultado sai em livros/s (meta: 50k/s)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class BulkImportBenchmark {
+
+    static final int ROWS = 100_000;
+
+    @State(Scope.Thread)
+    public static class Payload {
+        byte[] ndjson;
+
+        // Monta fora da medição um arquivo com isbns ainda não cadastrados
+        @Setup(Level.Invocation)
+        public void build(LibraryApiState state) {
+            StringBuilder body = new StringBuilder(ROWS * 64);
+            for (int i = 0; i < ROWS; i++) {
+                body.append("{\"title\":\"Title\",\"author\":\"Author\",\"isbn\":\"")
+                        .append(state.nextNewIsbn())
+                        .append("\"}\n");
+            }
+            ndjson = body.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int importNdjson(LibraryApiState state, Payload payload) throws Exception {
+        return state.mvc.perform(post("/api/books/import")
+                        .contentType(NdjsonResponse.MEDIA_TYPE)
+                        .content(payload.ndjson))
+                .andReturn().getResponse().getStatus();
+    }
+}
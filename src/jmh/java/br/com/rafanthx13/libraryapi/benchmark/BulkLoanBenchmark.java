@@ -0,0 +1,112 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/*
+Caixa de devoluções / balcão de empréstimos com 'size' itens: uma requisição por item (POST /api/loans e
+PATCH /api/loans/{id}) contra uma requisição só (POST e PATCH /api/loans/batch). Cada medida é um lote inteiro
+*/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class BulkLoanBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Items {
+
+        @Param("1000")
+        public int size;
+
+        List<String> checkouts;
+        List<Long> openLoans;
+
+        // Roda depois do reset da iteração do LibraryApiState: isbns livres para emprestar e empréstimos abertos para devolver
+        @Setup(Level.Iteration)
+        public void prepare(LibraryApiState state) {
+            List<LoanDTO> requests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                requests.add(LoanDTO.builder().isbn(state.nextAvailableIsbn()).customer("Fulano").email("fulano@email.com").build());
+            }
+            openLoans = state.context.getBean(LoanService.class).checkout(requests).stream()
+                    .map(LoanItemResultDTO::getId)
+                    .collect(Collectors.toList());
+            checkouts = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                checkouts.add(state.nextAvailableIsbn());
+            }
+        }
+    }
+
+    @Benchmark
+    public int checkoutOneByOne(LibraryApiState state, Items items) throws Exception {
+        int created = 0;
+        for (String isbn : items.checkouts) {
+            created += state.mvc.perform(post("/api/loans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content("{\"isbn\":\"" + isbn + "\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"}"))
+                    .andReturn().getResponse().getStatus() == 201 ? 1 : 0;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public int checkoutBatch(LibraryApiState state, Items items) throws Exception {
+        String json = items.checkouts.stream()
+                .map(isbn -> "{\"isbn\":\"" + isbn + "\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+        return state.mvc.perform(post("/api/loans/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int returnOneByOne(LibraryApiState state, Items items) throws Exception {
+        int returned = 0;
+        for (Long id : items.openLoans) {
+            returned += state.mvc.perform(patch("/api/loans/" + id)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content("{\"returned\":true}"))
+                    .andReturn().getResponse().getStatus() == 200 ? 1 : 0;
+        }
+        return returned;
+    }
+
+    @Benchmark
+    public int returnBatch(LibraryApiState state, Items items) throws Exception {
+        return state.mvc.perform(patch("/api/loans/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(items.openLoans.stream().map(String::valueOf).collect(Collectors.joining(",", "[", "]"))))
+                .andReturn().getResponse().getContentLength();
+    }
+}
@@ -0,0 +1,89 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Read-modify-write concorrente (8 threads) sobre os 'hot' primeiros livros (hot=1: todas as threads no mesmo livro):
++ optimistic: lê e altera; o @Version recusa quem perdeu a corrida e a operação é refeita (como o cliente faz no 409)
++ pessimistic: 'select ... for update' na leitura; as outras threads esperam o lock da linha até o commit
+'retries' conta as tentativas recusadas pelo @Version
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@Threads(8)
+public class ContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Contention {
+
+        @Param({"1", "64"})
+        public int hot;
+
+        EntityManager entityManager;
+        TransactionTemplate transaction;
+
+        @Setup(Level.Trial)
+        public void prepare(LibraryApiState state) {
+            entityManager = SharedEntityManagerCreator.createSharedEntityManager(state.context.getBean(EntityManagerFactory.class));
+            transaction = new TransactionTemplate(state.context.getBean(PlatformTransactionManager.class));
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retries {
+        public long retries;
+    }
+
+    @Benchmark
+    public long optimistic(Contention contention, Retries retries) {
+        long id = ThreadLocalRandom.current().nextLong(contention.hot) + 1;
+        while (true) {
+            try {
+                return contention.transaction.execute(status -> rename(contention.entityManager.find(Book.class, id)));
+            } catch (OptimisticLockingFailureException e) {
+                retries.retries++;
+            }
+        }
+    }
+
+    @Benchmark
+    public long pessimistic(Contention contention) {
+        long id = ThreadLocalRandom.current().nextLong(contention.hot) + 1;
+        return contention.transaction.execute(status ->
+                rename(contention.entityManager.find(Book.class, id, LockModeType.PESSIMISTIC_WRITE)));
+    }
+
+    private static long rename(Book book) {
+        book.setTitle("Title " + ThreadLocalRandom.current().nextInt()); // sempre diferente, para sempre haver update
+        return book.getVersion();
+    }
+}
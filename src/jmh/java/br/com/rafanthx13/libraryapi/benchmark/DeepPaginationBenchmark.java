@@ -0,0 +1,75 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.BookKeysetRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// GET /api/books na mesma profundidade: offset (page=n, com count) x cursor (token apontando para a mesma posição)
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class DeepPaginationBenchmark {
+
+    static final int SIZE = 20;
+
+    @State(Scope.Benchmark)
+    public static class Position {
+
+        // quantos livros o cliente já percorreu
+        @Param({"0", "100000", "900000"})
+        long depth;
+
+        String cursor;
+
+        @Setup
+        public void setUp() {
+            Keyset first = Keyset.of("", Sort.by("id"), BookKeysetRepository.SORTABLE);
+            cursor = depth == 0 ? "" : first.after(Book.builder().id(depth).build()).encode();
+        }
+    }
+
+    @Benchmark
+    public int offset(LibraryApiState state, Position position) throws Exception {
+        return state.mvc.perform(get("/api/books")
+                        .param("page", String.valueOf(position.depth / SIZE))
+                        .param("size", String.valueOf(SIZE))
+                        .param("sort", "id")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int cursor(LibraryApiState state, Position position) throws Exception {
+        return state.mvc.perform(get("/api/books")
+                        .param("cursor", position.cursor)
+                        .param("size", String.valueOf(SIZE))
+                        .param("sort", "id")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends DeepPaginationBenchmark {
+    }
+}
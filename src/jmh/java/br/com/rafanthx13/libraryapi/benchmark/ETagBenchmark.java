@@ -0,0 +1,83 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+Polling de livros com ETag: a resposta completa (200) contra a revalidação com If-None-Match (304, sem buscar os dados),
+para um livro (GET /api/books/{id}, os livros da massa estão todos na versão 0) e para uma listagem filtrada
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ETagBenchmark {
+
+    static final String LIST = "/api/books?author=Author 12&page=0&size=20";
+
+    @State(Scope.Benchmark)
+    public static class Listing {
+
+        String etag;
+
+        @Setup(Level.Iteration)
+        public void prepare(LibraryApiState state) throws Exception {
+            etag = state.mvc.perform(get(LIST).accept(MediaType.APPLICATION_JSON))
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        }
+    }
+
+    @Benchmark
+    public int single(LibraryApiState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int singleNotModified(LibraryApiState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int list(LibraryApiState state) throws Exception {
+        return state.mvc.perform(get(LIST)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int listNotModified(LibraryApiState state, Listing listing) throws Exception {
+        return state.mvc.perform(get(LIST)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_NONE_MATCH, listing.etag))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends ETagBenchmark {
+    }
+}
@@ -0,0 +1,83 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.controller.ApplicationControllerAdvice;
+import br.com.rafanthx13.libraryapi.data.repository.BookKeysetRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+import br.com.rafanthx13.libraryapi.exception.ApiErrors;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/*
+Custo das respostas 4xx ao lado de um 2xx barato (todos sem ir ao banco). Rodar com '-prof gc' para ver a alocação por operação:
++ ok: GET /api/books/{id}/availability (200, da memória)
++ businessError: GET /api/books?cursor=&sort=title&sort=author (BusinessException de mensagem fixa -> 400)
++ validationError: POST /api/books com '{}' (MethodArgumentNotValidException -> 400, três campos)
++ businessErrorHandled: só a exceção e o ApplicationControllerAdvice, sem o MockMvc (que aloca ~100KB por requisição
+  e esconde a diferença)
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ErrorPathBenchmark {
+
+    static final Sort SORT = Sort.by("title", "author");
+
+    @Benchmark
+    public int ok(LibraryApiState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id + "/availability")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int businessError(LibraryApiState state) throws Exception {
+        return state.mvc.perform(get("/api/books")
+                        .param("cursor", "")
+                        .param("sort", "title")
+                        .param("sort", "author")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public ApiErrors businessErrorHandled(LibraryApiState state) {
+        try {
+            Keyset.of("", SORT, BookKeysetRepository.SORTABLE);
+            return null;
+        } catch (BusinessException e) {
+            return state.context.getBean(ApplicationControllerAdvice.class).handleBusinessException(e);
+        }
+    }
+
+    @Benchmark
+    public int validationError(LibraryApiState state) throws Exception {
+        return state.mvc.perform(post("/api/books")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends ErrorPathBenchmark {
+    }
+}
@@ -0,0 +1,70 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.controller.NdjsonResponse;
+import br.com.rafanthx13.libraryapi.service.BookService;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+/*
+Exportação completa (catálogo / histórico de empréstimos) escrita num OutputStream que descarta os bytes.
+Não passa pelo MockMvc porque ele guarda o corpo inteiro da resposta em memória. Com '-prof gc' o
+heap deve ficar estável mesmo com 10M empréstimos (só alocação de curta duração por linha)
+*/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ExportBenchmark {
+
+    @Benchmark
+    public long exportBooks(LibraryApiState state, Blackhole blackhole) throws Exception {
+        CountingOutputStream out = new CountingOutputStream(blackhole);
+        NdjsonResponse.of(state.context.getBean(ObjectMapper.class), state.context.getBean(BookService.class)::exportBooks)
+                .getBody()
+                .writeTo(out);
+        return out.bytes;
+    }
+
+    @Benchmark
+    public long exportLoans(LibraryApiState state, Blackhole blackhole) throws Exception {
+        CountingOutputStream out = new CountingOutputStream(blackhole);
+        NdjsonResponse.of(state.context.getBean(ObjectMapper.class), state.context.getBean(LoanService.class)::exportLoans)
+                .getBody()
+                .writeTo(out);
+        return out.bytes;
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+        long bytes;
+
+        CountingOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            bytes += len;
+        }
+    }
+}
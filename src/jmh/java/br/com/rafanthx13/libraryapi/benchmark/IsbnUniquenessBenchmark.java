@@ -0,0 +1,50 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+import br.com.rafanthx13.libraryapi.service.BookService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Criação concorrente de livros (8 threads):
++ checkThenInsert: o caminho antigo, 'existsByIsbn' e depois 'save' (duas idas ao banco, sujeito a corrida)
++ singleInsert: BookService.save, um insert só com a unique do isbn decidindo o duplicado
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@Threads(8)
+public class IsbnUniquenessBenchmark {
+
+    @Benchmark
+    public Book checkThenInsert(LibraryApiState state) {
+        BookRepository repository = state.context.getBean(BookRepository.class);
+        Book book = newBook(state);
+        if (repository.existsByIsbn(book.getIsbn())) {
+            throw new BusinessException("Isbn já cadastrado.");
+        }
+        return repository.save(book);
+    }
+
+    @Benchmark
+    public Book singleInsert(LibraryApiState state) {
+        return state.context.getBean(BookService.class).save(newBook(state));
+    }
+
+    private static Book newBook(LibraryApiState state) {
+        return Book.builder().title("As aventuras").author("Artur").isbn(state.nextNewIsbn()).build();
+    }
+}
@@ -0,0 +1,128 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import br.com.rafanthx13.libraryapi.LibraryApiApplication;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.BookSearchIndex;
+import br.com.rafanthx13.libraryapi.service.index.LoanStatisticsIndex;
+import br.com.rafanthx13.libraryapi.service.index.OverdueLoanIndex;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Estado compartilhado pelos benchmarks: sobe a aplicação inteira (controllers, services, JPA)
+contra um H2 em memória já carregado com a massa de dados, e expõe um MockMvc para
+executar o caminho real das requisições (Jackson, validação, controller, service, repository).
+
+Massa de dados (padrão 1M livros e 10M empréstimos, ajustável com -p books=... -p loans=...):
++ livro x: title 'Title x', author 'Author (x mod 10000)', isbn 'isbn-x'
++ empréstimo x: livro (x mod books) + 1, customer 'customer-(x mod 100000)'
++ só os livros com id múltiplo de 10 ficam com um empréstimo ativo; os demais estão disponíveis
+*/
+@State(Scope.Benchmark)
+public class LibraryApiState {
+
+    @Param("1000000")
+    public long books;
+
+    @Param("10000000")
+    public long loans;
+
+    public ConfigurableApplicationContext context;
+    public MockMvc mvc;
+    public JdbcTemplate jdbc;
+
+    // Contadores para gerar isbn novos (create de livro) e escolher livros disponíveis (create de empréstimo)
+    private final AtomicLong isbnSequence = new AtomicLong();
+    private final AtomicLong availableBookSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .run(arguments().toArray(new String[0]));
+        jdbc = context.getBean(JdbcTemplate.class);
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        load();
+        // A massa foi inserida direto via SQL, então os índices em memória precisam ser reconstruídos
+        context.getBean(BookSearchIndex.class).rebuild();
+        context.getBean(OverdueLoanIndex.class).rebuild();
+        context.getBean(BookAvailabilityIndex.class).rebuild();
+        context.getBean(LoanStatisticsIndex.class).rebuild();
+    }
+
+    // Argumentos de linha de comando têm precedência sobre o application.properties. Estados mais específicos
+    // (ex.: AsyncLoadBenchmark) acrescentam os seus
+    protected List<String> arguments() {
+        return new ArrayList<>(Arrays.asList(
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.jpa.show-sql=false",
+                "--spring.boot.admin.client.enabled=false",
+                "--spring.main.banner-mode=off",
+                "--server.port=0",
+                "--logging.file=target/benchmark.log",
+                "--library.logging.requests.file=target/benchmark-requests.log"));
+    }
+
+    @Setup(Level.Iteration)
+    public void returnBenchmarkLoans() {
+        // Devolve os empréstimos criados na iteração anterior para que os livros voltem a ficar disponíveis
+        jdbc.update("update loan set returned = true, active_book_id = null where id > ?", loans);
+        availableBookSequence.set(0);
+        context.getBean(OverdueLoanIndex.class).rebuild();
+        context.getBean(BookAvailabilityIndex.class).rebuild();
+        context.getBean(LoanStatisticsIndex.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private void load() {
+        jdbc.update("insert into book (id, title, author, isbn) "
+                + "select x, 'Title ' || x, 'Author ' || mod(x, 10000), 'isbn-' || x from system_range(1, ?)", books);
+        // id vem da book_seq (pooled, de 50 em 50): o próximo bloco começa logo depois da massa
+        jdbc.execute("alter sequence book_seq restart with " + (books + 50));
+        jdbc.update("insert into loan (id, customer, customer_email, id_book, loan_date, returned) "
+                + "select x, 'customer-' || mod(x, 100000), 'customer-' || mod(x, 100000) || '@email.com', "
+                + "mod(x, ?) + 1, dateadd('DAY', -mod(x, 365), current_date), "
+                + "not (x > ? - ? and mod(mod(x, ?) + 1, 10) = 0) "
+                + "from system_range(1, ?)", books, loans, books, books, loans);
+        jdbc.execute("alter sequence loan_seq restart with " + (loans + 50)); // idem loan_seq
+        jdbc.update("update loan set active_book_id = id_book where returned = false");
+    }
+
+    public String nextNewIsbn() {
+        return "bench-" + isbnSequence.incrementAndGet();
+    }
+
+    // Pula os livros com id múltiplo de 10, que já estão emprestados na massa de dados
+    public String nextAvailableIsbn() {
+        long n = availableBookSequence.getAndIncrement() % (books - books / 10);
+        long id = n + n / 9 + 1;
+        return "isbn-" + id;
+    }
+
+    public String existingIsbn(long n) {
+        return "isbn-" + (n % books + 1);
+    }
+
+    public String existingCustomer(long n) {
+        return "customer-" + (n % 100000);
+    }
+}
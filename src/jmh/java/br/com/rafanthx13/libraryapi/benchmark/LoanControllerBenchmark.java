@@ -0,0 +1,53 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// POST /api/loans e GET /api/loans?isbn=&customer= passando por LoanController -> LoanServiceImpl -> H2
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class LoanControllerBenchmark {
+
+    @Benchmark
+    public int create(LibraryApiState state) throws Exception {
+        String json = "{\"isbn\":\"" + state.nextAvailableIsbn()
+                + "\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"}";
+        return state.mvc.perform(post("/api/loans")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int find(LibraryApiState state) throws Exception {
+        long n = ThreadLocalRandom.current().nextLong(state.loans);
+        return state.mvc.perform(get("/api/loans")
+                        .param("isbn", state.existingIsbn(n))
+                        .param("customer", state.existingCustomer(n))
+                        .param("page", "0")
+                        .param("size", "20")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends LoanControllerBenchmark {
+    }
+}
@@ -0,0 +1,53 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// GET /api/loans com cada combinação do filtro: só isbn, só customer e os dois
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class LoanFilterBenchmark {
+
+    @Benchmark
+    public int isbn(LibraryApiState state) throws Exception {
+        long n = ThreadLocalRandom.current().nextLong(state.loans);
+        return perform(state, get("/api/loans").param("isbn", state.existingIsbn(n)));
+    }
+
+    @Benchmark
+    public int customer(LibraryApiState state) throws Exception {
+        long n = ThreadLocalRandom.current().nextLong(state.loans);
+        return perform(state, get("/api/loans").param("customer", state.existingCustomer(n)));
+    }
+
+    @Benchmark
+    public int isbnAndCustomer(LibraryApiState state) throws Exception {
+        long n = ThreadLocalRandom.current().nextLong(state.loans);
+        return perform(state, get("/api/loans")
+                .param("isbn", state.existingIsbn(n))
+                .param("customer", state.existingCustomer(n)));
+    }
+
+    private static int perform(LibraryApiState state, MockHttpServletRequestBuilder request) throws Exception {
+        return state.mvc.perform(request
+                        .param("page", "0")
+                        .param("size", "20")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+}
@@ -0,0 +1,87 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import br.com.rafanthx13.libraryapi.controller.BookController;
+import br.com.rafanthx13.libraryapi.logging.RequestLogFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+Appender síncrono x assíncrono (library.logging.async.enabled=false/true), com 4 threads disputando o arquivo:
++ log: só o log.info do BookController (o custo do appender)
++ getBook: GET /api/books/{id} com o RequestLogFilter (log do controller + linha JSON da requisição)
+overflow=block por padrão, para o assíncrono escrever tudo (-p overflow=drop mostra o modo que descarta)
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class LoggingBenchmark {
+
+    static final Logger log = LoggerFactory.getLogger(BookController.class);
+
+    @State(Scope.Benchmark)
+    public static class LoggingState extends LibraryApiState {
+
+        @Param({"false", "true"})
+        public boolean async;
+
+        @Param("block")
+        public String overflow;
+
+        @Override
+        protected List<String> arguments() {
+            List<String> arguments = super.arguments();
+            arguments.add("--library.logging.async.enabled=" + async);
+            arguments.add("--library.logging.async.overflow=" + overflow);
+            return arguments;
+        }
+
+        // O MockMvc do LibraryApiState não passa pelos filtros. O console sai do root: aqui ele mediria o pipe do
+        // stdout do JMH, não o appender; fica só o arquivo (logging.file) e o requests.log
+        @Setup(Level.Trial)
+        public void requestLog() {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).detachAppender("ASYNC_CONSOLE");
+            mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                    .addFilters(new RequestLogFilter())
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public void log(LoggingState state) {
+        log.info(" obtaining details for book id: {} ", ThreadLocalRandom.current().nextLong(state.books));
+    }
+
+    @Benchmark
+    public int getBook(LoggingState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+}
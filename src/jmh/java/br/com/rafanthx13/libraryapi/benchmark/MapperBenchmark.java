@@ -0,0 +1,92 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapper;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapperImpl;
+import br.com.rafanthx13.libraryapi.data.mapper.LoanMapper;
+import br.com.rafanthx13.libraryapi.data.mapper.LoanMapperImpl;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Compara o ModelMapper (reflexão) com os mappers gerados pelo MapStruct, nas conversões feitas pelos controllers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    private ModelMapper modelMapper;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+
+    private Book book;
+    private BookDTO bookDTO;
+    private Loan loan;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        bookMapper = new BookMapperImpl();
+        loanMapper = new LoanMapperImpl();
+        // Fora do Spring o BookMapper usado pelo LoanMapperImpl precisa ser injetado na mão
+        ReflectionTestUtils.setField(loanMapper, "bookMapper", bookMapper);
+
+        book = Book.builder().id(1L).title("As aventuras").author("Artur").isbn("123").build();
+        bookDTO = BookDTO.builder().title("As aventuras").author("Artur").isbn("123").build();
+        loan = Loan.builder().id(1L).customer("Fulano").customerEmail("fulano@email.com")
+                .book(book).loanDate(LocalDate.now()).build();
+    }
+
+    @Benchmark
+    public BookDTO bookToDtoModelMapper() {
+        return modelMapper.map(book, BookDTO.class);
+    }
+
+    @Benchmark
+    public BookDTO bookToDtoMapStruct() {
+        return bookMapper.toDto(book);
+    }
+
+    @Benchmark
+    public Book dtoToBookModelMapper() {
+        return modelMapper.map(bookDTO, Book.class);
+    }
+
+    @Benchmark
+    public Book dtoToBookMapStruct() {
+        return bookMapper.toEntity(bookDTO);
+    }
+
+    // Mesmo caminho que o LoanController.find fazia: dois map por linha
+    @Benchmark
+    public LoanDTO loanToDtoModelMapper() {
+        BookDTO dto = modelMapper.map(loan.getBook(), BookDTO.class);
+        LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
+        loanDTO.setBook(dto);
+        return loanDTO;
+    }
+
+    @Benchmark
+    public LoanDTO loanToDtoMapStruct() {
+        return loanMapper.toDto(loan);
+    }
+}
@@ -0,0 +1,107 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapper;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/*
+Custo das métricas por camada (LayerMetricsAspect + SqlStatementCounter): os mesmos endpoints com
+library.metrics.layers.enabled=false/true. Cada requisição passa por 4 a 25 timers (controller, service, repository
+e um mapper por linha da página)
++ getBook: GET /api/books/{id}
++ findBooks: GET /api/books?author= (página de 20, mapeada linha a linha)
++ createLoan: POST /api/loans (escrita)
++ mapper: só uma chamada do BookMapper (com as métricas ligadas passa pelo proxy + timer): o custo de cada ponto medido,
+  sem o ruído do MockMvc e do banco
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class MetricsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MetricsState extends LibraryApiState {
+
+        @Param({"false", "true"})
+        public boolean layers;
+
+        @Override
+        protected List<String> arguments() {
+            List<String> arguments = super.arguments();
+            arguments.add("--library.metrics.layers.enabled=" + layers);
+            return arguments;
+        }
+
+        BookMapper mapper;
+
+        @Setup(Level.Trial)
+        public void mapper() {
+            mapper = context.getBean(BookMapper.class);
+        }
+    }
+
+    static final Book BOOK = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+
+    @Benchmark
+    public BookDTO mapper(MetricsState state) {
+        return state.mapper.toDto(BOOK);
+    }
+
+    @Benchmark
+    public int getBook(MetricsState state) throws Exception {
+        long id = ThreadLocalRandom.current().nextLong(state.books) + 1;
+        return state.mvc.perform(get("/api/books/" + id)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int findBooks(MetricsState state) throws Exception {
+        long n = ThreadLocalRandom.current().nextLong(10000);
+        return state.mvc.perform(get("/api/books")
+                        .param("author", "Author " + n)
+                        .param("page", "0")
+                        .param("size", "20")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @Benchmark
+    public int createLoan(MetricsState state) throws Exception {
+        String json = "{\"isbn\":\"" + state.nextAvailableIsbn()
+                + "\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"}";
+        return state.mvc.perform(post("/api/loans")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andReturn().getResponse().getStatus();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends MetricsBenchmark {
+    }
+}
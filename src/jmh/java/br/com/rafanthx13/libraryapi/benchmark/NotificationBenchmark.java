@@ -0,0 +1,32 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.service.notification.LateLoanNotificationJob;
+
+/*
+Uma execução completa do LateLoanNotificationJob (sender em memória): lê todos os atrasados em páginas,
+agrupa por email e despacha as mensagens. Na massa padrão são 100k empréstimos em aberto (livros com id
+múltiplo de 10), quase todos atrasados; para 1M use '-p books=10000000'. Com '-prof gc' dá para conferir
+que a alocação não retém os empréstimos lidos
+*/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class NotificationBenchmark {
+
+    @Benchmark
+    public int notifyLateLoans(LibraryApiState state) {
+        return state.context.getBean(LateLoanNotificationJob.class).run();
+    }
+}
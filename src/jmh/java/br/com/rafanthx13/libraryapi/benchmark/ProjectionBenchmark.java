@@ -0,0 +1,72 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapper;
+import br.com.rafanthx13.libraryapi.data.mapper.LoanMapper;
+import br.com.rafanthx13.libraryapi.service.BookService;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+/*
+Página da listagem: entidades gerenciadas + mapper x projeção direta no DTO.
+Rodar com '-prof gc' para ver a queda em gc.alloc.rate.norm (bytes por página).
+Os empréstimos são filtrados por cliente, e sem índice em 'customer' o scan do H2 domina o custo;
+a listagem de livros (página por id) isola a diferença de hidratação
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ProjectionBenchmark {
+
+    static final PageRequest PAGE = PageRequest.of(0, 50);
+
+    @Benchmark
+    public Page<BookDTO> bookEntities(LibraryApiState state) {
+        BookMapper mapper = state.context.getBean(BookMapper.class);
+        return state.context.getBean(BookService.class).find(new Book(), randomPage(state)).map(mapper::toDto);
+    }
+
+    @Benchmark
+    public Page<BookDTO> bookProjected(LibraryApiState state) {
+        return state.context.getBean(BookService.class).findProjected(new Book(), randomPage(state));
+    }
+
+    @Benchmark
+    public Page<LoanDTO> loanEntities(LibraryApiState state) {
+        LoanMapper mapper = state.context.getBean(LoanMapper.class);
+        return state.context.getBean(LoanService.class).find(filter(state), PAGE).map(mapper::toDto);
+    }
+
+    @Benchmark
+    public Page<LoanDTO> loanProjected(LibraryApiState state) {
+        return state.context.getBean(LoanService.class).findProjected(filter(state), PAGE);
+    }
+
+    // Primeiras páginas: com offset grande o scan do H2 até o offset passaria a dominar
+    private static PageRequest randomPage(LibraryApiState state) {
+        return PageRequest.of(ThreadLocalRandom.current().nextInt(10), PAGE.getPageSize());
+    }
+
+    private static LoanFilterDTO filter(LibraryApiState state) {
+        return LoanFilterDTO.builder()
+                .customer(state.existingCustomer(ThreadLocalRandom.current().nextLong(100000)))
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package br.com.rafanthx13.libraryapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+Estatísticas de empréstimos: as mesmas contas agregadas no banco a cada leitura (group by sobre a tabela de empréstimos)
+contra os contadores em memória do LoanStatisticsIndex (memory) e pela API, via GET /api/loans/statistics
+*/
+@BenchmarkMode(Mode.Throughput) // ops/s; a latência com percentis (p0.99) fica em Latency, em ms
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class StatisticsBenchmark {
+
+    // O H2 reaproveita o resultado de uma consulta idêntica se as tabelas não mudaram (OPTIMIZE_REUSE_RESULTS):
+    // o 'id > -n' aleatório não filtra nada, só obriga a agregar de novo a cada chamada, como seria num banco de verdade
+    @Benchmark
+    public int database(LibraryApiState state) {
+        long n = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        Map<String, Object> totals = state.jdbc.queryForMap("select count(*) total, "
+                + "count(case when returned is null or returned = false then 1 end) active from loan where id > ?", -n);
+        List<Map<String, Object>> top = state.jdbc.queryForList("select b.id, b.title, b.author, b.isbn, t.loans "
+                + "from (select id_book, count(*) loans from loan where id_book is not null and id > ? group by id_book "
+                + "order by loans desc, id_book limit 10) t join book b on b.id = t.id_book order by t.loans desc, b.id", -n);
+        return totals.size() + top.size();
+    }
+
+    @Benchmark
+    public LoanStatisticsDTO memory(LibraryApiState state) {
+        return state.context.getBean(LoanService.class).getStatistics(10);
+    }
+
+    @Benchmark
+    public int endpoint(LibraryApiState state) throws Exception {
+        return state.mvc.perform(get("/api/loans/statistics?top=10")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentLength();
+    }
+
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public static class Latency extends StatisticsBenchmark {
+    }
+}
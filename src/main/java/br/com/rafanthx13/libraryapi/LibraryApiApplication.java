@@ -1,19 +1,11 @@
 package br.com.rafanthx13.libraryapi;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class LibraryApiApplication {
 
-	// O spring vai gera um único Singleton apra toda a aplicação
-	@Bean
-	public ModelMapper modelMapper(){
-		return new ModelMapper();
-	}
-
 	public static void main(String[] args) {
 		SpringApplication.run(LibraryApiApplication.class, args);
 	}
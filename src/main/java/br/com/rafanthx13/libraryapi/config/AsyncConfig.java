@@ -0,0 +1,91 @@
+package br.com.rafanthx13.libraryapi.config;
+
+import br.com.rafanthx13.libraryapi.LibraryApiApplication;
+import br.com.rafanthx13.libraryapi.controller.OffloadingHandlerAdapter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+Executor das requisições assíncronas do MVC ("jpaExecutor"):
++ Sempre usado pelas exportações em StreamingResponseBody
++ Com library.async.enabled=true, também executa os métodos dos controllers (ver OffloadingHandlerAdapter)
++ library.async.executor=pool: threads fixas e fila limitada; fila cheia => a própria thread do Tomcat executa (back-pressure)
++ library.async.executor=virtual: uma virtual thread por tarefa (Java 21+); em JVMs sem virtual threads cai no pool
+*/
+@Slf4j
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    private final AsyncTaskExecutor jpaExecutor;
+
+    public AsyncConfig(@Qualifier("jpaExecutor") AsyncTaskExecutor jpaExecutor) {
+        this.jpaExecutor = jpaExecutor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(jpaExecutor);
+    }
+
+    @Configuration
+    static class ExecutorConfig {
+
+        @Bean
+        public AsyncTaskExecutor jpaExecutor(@Value("${library.async.executor:pool}") String type,
+                                             @Value("${library.async.threads:16}") int threads,
+                                             @Value("${library.async.queue:1000}") int queueCapacity) {
+            if ("virtual".equals(type)) {
+                ExecutorService virtual = virtualThreadExecutor();
+                if (virtual != null) {
+                    return new ConcurrentTaskExecutor(virtual);
+                }
+                log.warn("Virtual threads not available on Java {}, using a pool of {} threads",
+                        System.getProperty("java.version"), threads);
+            }
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(threads);
+            executor.setMaxPoolSize(threads);
+            executor.setQueueCapacity(queueCapacity);
+            executor.setThreadNamePrefix("jpa-");
+            executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+            return executor;
+        }
+
+        // Executors.newVirtualThreadPerTaskExecutor() por reflexão: o projeto compila para Java 8
+        private static ExecutorService virtualThreadExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "library.async.enabled", havingValue = "true")
+    public WebMvcRegistrations offloadingHandlerAdapter() {
+        String basePackage = LibraryApiApplication.class.getPackage().getName();
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new OffloadingHandlerAdapter(jpaExecutor, basePackage);
+            }
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package br.com.rafanthx13.libraryapi.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Habilita o @Cacheable/@CacheEvict. Tamanho, TTL e stats dos caches ficam no application.properties
+@EnableCaching
+@Configuration
+public class CacheConfig {
+
+    public static final String BOOKS_BY_ISBN = "booksByIsbn";
+    public static final String BOOKS_BY_ID = "booksById";
+
+}
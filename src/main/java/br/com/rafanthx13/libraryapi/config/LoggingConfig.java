@@ -0,0 +1,65 @@
+package br.com.rafanthx13.libraryapi.config;
+
+import br.com.rafanthx13.libraryapi.logging.BatchingAsyncAppender;
+import br.com.rafanthx13.libraryapi.logging.RequestLogFilter;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Iterator;
+
+/*
+Log de requisições em JSON (RequestLogFilter) e métricas dos appenders assíncronos do logback-spring.xml:
+library.logging.queue.depth e library.logging.dropped, por appender
+*/
+@Configuration
+public class LoggingConfig {
+
+    // Logo no começo da cadeia de filtros, para a latência incluir os outros filtros
+    @Bean
+    @ConditionalOnProperty(name = "library.logging.requests.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<RequestLogFilter> requestLogFilter() {
+        FilterRegistrationBean<RequestLogFilter> registration = new FilterRegistrationBean<>(new RequestLogFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Bean
+    public MeterBinder loggingMetrics() {
+        return registry -> {
+            if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+                return;
+            }
+            for (Logger logger : ((LoggerContext) LoggerFactory.getILoggerFactory()).getLoggerList()) {
+                Iterator<Appender<ILoggingEvent>> appenders = logger.iteratorForAppenders();
+                while (appenders.hasNext()) {
+                    Appender<ILoggingEvent> appender = appenders.next();
+                    if (appender instanceof BatchingAsyncAppender) {
+                        bind((BatchingAsyncAppender) appender, registry);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void bind(BatchingAsyncAppender appender, MeterRegistry registry) {
+        Gauge.builder("library.logging.queue.depth", appender, BatchingAsyncAppender::getQueueDepth)
+                .tag("appender", appender.getName())
+                .register(registry);
+        FunctionCounter.builder("library.logging.dropped", appender, BatchingAsyncAppender::getDropped)
+                .tag("appender", appender.getName())
+                .register(registry);
+    }
+}
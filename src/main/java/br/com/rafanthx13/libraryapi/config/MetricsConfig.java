@@ -0,0 +1,31 @@
+package br.com.rafanthx13.libraryapi.config;
+
+import br.com.rafanthx13.libraryapi.metrics.LayerMetricsAspect;
+import br.com.rafanthx13.libraryapi.metrics.SqlStatementCounter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+Métricas por camada (LayerMetricsAspect) e contagem de SQL por requisição (SqlStatementCounter).
+Desligável com library.metrics.layers.enabled=false; o http.server.requests do actuator continua de qualquer jeito
+*/
+@Configuration
+@ConditionalOnProperty(name = "library.metrics.layers.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig {
+
+    @Bean
+    public LayerMetricsAspect layerMetricsAspect(MeterRegistry registry) {
+        return new LayerMetricsAspect(registry);
+    }
+
+    // putIfAbsent: um StatementInspector configurado por propriedade (ex.: QueryPlanTest) tem precedência
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementCounter() {
+        return properties -> properties.putIfAbsent(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementCounter());
+    }
+}
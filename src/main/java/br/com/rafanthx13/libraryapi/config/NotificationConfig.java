@@ -0,0 +1,40 @@
+package br.com.rafanthx13.libraryapi.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Habilita o @Scheduled (LateLoanNotificationJob) e cria o executor do envio de notificações
+@EnableScheduling
+@Configuration
+public class NotificationConfig {
+
+    // Threads fixas e fila limitada; fila cheia => CallerRunsPolicy (quem produz passa a enviar e desacelera).
+    // Profundidade da fila publicada como library.notifications.queue.depth
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor notificationExecutor(@Value("${library.notification.threads:4}") int threads,
+                                                   @Value("${library.notification.queue:1000}") int queueCapacity,
+                                                   MeterRegistry registry) {
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "notification-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        Gauge.builder("library.notifications.queue.depth", queue, BlockingQueue::size).register(registry);
+        return executor;
+    }
+
+}
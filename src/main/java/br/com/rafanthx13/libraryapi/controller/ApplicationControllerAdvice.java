@@ -1,5 +1,6 @@
 package br.com.rafanthx13.libraryapi.controller;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -20,6 +21,8 @@ Adiciona outras configurações a todos os controllers
 @RestControllerAdvice
 public class ApplicationControllerAdvice {
 
+    private static final ApiErrors CONCURRENT_MODIFICATION = ApiErrors.of("Resource was modified concurrently, reload and retry");
+
     // Erros de Validação
     @ExceptionHandler(MethodArgumentNotValidException.class) // Quando alguem jogar essa Exception
     @ResponseStatus(HttpStatus.BAD_REQUEST) // Retorna 4040 BAD_REQUEST
@@ -32,13 +35,21 @@ public class ApplicationControllerAdvice {
     @ExceptionHandler(BusinessException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiErrors handleBusinessException(BusinessException ex){
-        return new ApiErrors(ex);
+        return ex.getErrors(); // montado junto com a exceção (nas de mensagem fixa, uma vez só)
+    }
+
+    // Concorrência otimista: outra escrita mudou a versão entre a leitura e o update. O cliente relê e tenta de novo
+    // (o 412 do If-Match, quando a versão enviada já não é a atual, sai como ResponseStatusException)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrors handleOptimisticLockingFailure(OptimisticLockingFailureException ex){
+        return CONCURRENT_MODIFICATION;
     }
 
     // ResponseEntity: Objeto de resposta; 
     // Usado no LoanController::Post quando der erro ao buscar pelo ISBN
     @ExceptionHandler(ResponseStatusException.class)
     public ResponseEntity handleResponseStatusException( ResponseStatusException ex ){
-        return new ResponseEntity(new ApiErrors(ex), ex.getStatus());
+        return new ResponseEntity(ex.getReason() == null ? ApiErrors.NO_REASON : new ApiErrors(ex), ex.getStatus());
     }
 }
\ No newline at end of file
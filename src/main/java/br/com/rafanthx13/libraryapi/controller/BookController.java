@@ -1,23 +1,45 @@
 package br.com.rafanthx13.libraryapi.controller;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.StreamSupport;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookAvailabilityDTO;
 import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.CursorPageDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookImportResultDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapper;
+import br.com.rafanthx13.libraryapi.data.repository.BookKeysetRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.service.BookService;
 
 import lombok.extern.slf4j.Slf4j;
@@ -36,8 +58,14 @@ import io.swagger.annotations.ApiResponses;
 @Slf4j // Fornece 'log' para registrar logs da API
 public class BookController {
 
+  // isbns por requisição na consulta de disponibilidade em lote
+  static final int AVAILABILITY_LIMIT = 10_000;
+  private static final BusinessException TOO_MANY_ISBNS = new BusinessException("Too many isbns: max " + AVAILABILITY_LIMIT);
+
   private final BookService service;
-  private final ModelMapper modelMapper;
+  private final BookMapper bookMapper;
+  private final ObjectMapper objectMapper;
+  private final Validator validator;
 
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
@@ -46,25 +74,52 @@ public class BookController {
   public BookDTO create(@RequestBody @Valid BookDTO dto){
     log.info(" creating a book for isbn: {} ", dto.getIsbn());
     // converto dto em uma entity Book
-    Book entity = modelMapper.map(dto, Book.class);
+    Book entity = bookMapper.toEntity(dto);
     entity = service.save(entity);
     // Ao voltar, converto de uma entity apra dtp
-    return modelMapper.map(entity, BookDTO.class);
+    return bookMapper.toDto(entity);
   }
 
+  /* get :: /api/books/{id}
+    ETag é a versão do livro. Com If-None-Match igual à versão atual (lida do índice em memória) responde 304
+    sem buscar o livro; senão busca e responde com o ETag da versão que foi lida
+  */
   @GetMapping("{id}")
   @ApiOperation("Get a book details by id")
-  public BookDTO get( @PathVariable Long id ){
+  public ResponseEntity<BookDTO> get( @PathVariable Long id,
+                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch ){
       log.info(" obtaining details for book id: {} ", id);
+      Optional<Long> version = service.getVersion(id);
+      if( version.isPresent() && ETags.matches(ifNoneMatch, ETags.of(version.get())) ){
+          return ETags.notModified(ETags.of(version.get()));
+      }
       // o map mapeia o resultado, e usamos 'orElseTrhow'
       // para o caso que der erro (no caso, nâo encontrou o livro pois foi vazio)
       // ResponseStatusException: já está disponibilizada no Spring Boot, com status 404
       return service
               .getById(id)
-              .map( book -> modelMapper.map(book, BookDTO.class)  )
+              .map( book -> ETags.ok(ETags.of(book.getVersion()), bookMapper.toDto(book)) )
+              .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+  }
+
+  // GET :: disponibilidade do livro, respondida da memória (sem consulta de empréstimos no banco)
+  @GetMapping("{id}/availability")
+  @ApiOperation("Tells whether a book is available for loan")
+  public BookAvailabilityDTO availability( @PathVariable Long id ){
+      return service.getAvailability(id)
               .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
   }
 
+  // POST :: ["isbn", ...] -> disponibilidade de cada isbn, na mesma ordem (isbn inexistente: id null e available false)
+  @PostMapping("availability")
+  @ApiOperation("Tells whether each of many books (by isbn) is available for loan")
+  public List<BookAvailabilityDTO> availability( @RequestBody List<String> isbns ){
+      if( isbns.size() > AVAILABILITY_LIMIT ){
+          throw TOO_MANY_ISBNS;
+      }
+      return service.getAvailability(isbns);
+  }
+
   @DeleteMapping("{id}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   @ApiOperation("Deletes a book by id")
@@ -82,36 +137,132 @@ public class BookController {
   /* put :: /api/books/{id}
     Resgata o livro pelo ID; Insere os novos dados nele; manda para o service atualizar;
     A forma que ficar é como será retornado; Caso der algum erro nesse processo, manda Exception
+    Com If-Match ("versão" do ETag) só atualiza se o livro ainda estiver nessa versão (senão 412). Sem ele vale a
+    versão lida aqui: se outra escrita passar na frente até o update, o @Version recusa e a resposta é 409
   */
   @PutMapping("{id}")
   @ApiOperation("Updates a book")
-  public BookDTO update( @PathVariable Long id, @RequestBody @Valid BookDTO dto){
+  public ResponseEntity<BookDTO> update( @PathVariable Long id, @RequestBody @Valid BookDTO dto,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch ){
       log.info(" updating book of id: {} ", id);
+      List<Long> versions = ETags.versions(ifMatch);
       return service.getById(id).map( book -> {
-          book.setAuthor(dto.getAuthor());
-          book.setTitle(dto.getTitle());
-          book = service.update(book); // update na base
-          return modelMapper.map(book, BookDTO.class); // volta DTO:JSON
+          if( versions != null && !versions.contains(book.getVersion()) ){
+              throw ETags.preconditionFailed();
+          }
+          // O livro veio do cache e é compartilhado entre as requisições: as alterações vão numa cópia
+          Book changed = book.toBuilder().author(dto.getAuthor()).title(dto.getTitle()).build();
+          Book updated = service.update(changed); // update na base
+          return ETags.ok(ETags.of(updated.getVersion()), bookMapper.toDto(updated)); // volta DTO:JSON, com a versão nova
       }).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
   }
 
+  /* post :: /api/books/import
+    Importação em massa: aceita um array JSON ou NDJSON (um livro por linha). O corpo é lido livro a livro
+    (MappingIterator), validado como no create e entregue ao service em lotes. Linhas inválidas ou isbn
+    repetido/já cadastrado não barram o resto: voltam em 'errors' (mesmo formato de ApiErrors)
+  */
+  @PostMapping(value = "import", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonResponse.MEDIA_TYPE })
+  @ApiOperation("Imports books in bulk (JSON array or NDJSON)")
+  public ResponseEntity<BookImportResultDTO> importBooks( InputStream body ) throws IOException {
+      List<String> invalid = new ArrayList<>();
+      AtomicLong row = new AtomicLong();
+      BookImportResultDTO result;
+      try ( MappingIterator<BookDTO> rows = objectMapper.readerFor(BookDTO.class).readValues(body) ) {
+          Iterator<Book> books = StreamSupport.stream(Spliterators.spliteratorUnknownSize(untilBroken(rows, row, invalid), 0), false)
+                  .filter( dto -> isValid(dto, row.incrementAndGet(), invalid) )
+                  .map( bookMapper::toEntity )
+                  .iterator();
+          result = service.importBooks(books);
+      }
+      invalid.forEach(result::reject);
+      log.info(" imported {} books, {} rejected ", result.getImported(), result.getRejected());
+      HttpStatus status = result.getImported() > 0 || result.getRejected() == 0 ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST;
+      return ResponseEntity.status(status).body(result);
+  }
+
+  // JSON quebrado: para de ler ali. O que veio antes é importado normalmente, o resto da requisição é descartado
+  private Iterator<BookDTO> untilBroken( MappingIterator<BookDTO> rows, AtomicLong row, List<String> invalid ) {
+      return new Iterator<BookDTO>() {
+          private BookDTO next;
+          private boolean broken;
+
+          @Override
+          public boolean hasNext() {
+              if (next == null && !broken) {
+                  try {
+                      next = rows.hasNext() ? rows.next() : null;
+                  } catch (RuntimeException e) { // o Jackson embrulha erro de parse/mapeamento em RuntimeException
+                      broken = true;
+                      invalid.add("linha " + (row.get() + 1) + ": JSON inválido, importação interrompida.");
+                  }
+              }
+              return next != null;
+          }
+
+          @Override
+          public BookDTO next() {
+              hasNext();
+              BookDTO current = next;
+              next = null;
+              return current;
+          }
+      };
+  }
+
+  private boolean isValid( BookDTO dto, long row, List<String> invalid ) {
+      Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+      violations.forEach( v -> invalid.add("linha " + row + ": " + v.getPropertyPath() + " " + v.getMessage()) );
+      return violations.isEmpty();
+  }
+
+  /* get :: /api/books/export
+    Catálogo inteiro em NDJSON, lido por cursor e escrito conforme chega (memória constante, sem count)
+  */
+  @GetMapping(value = "export", produces = NdjsonResponse.MEDIA_TYPE)
+  @ApiOperation("Exports all books as NDJSON")
+  public ResponseEntity<StreamingResponseBody> export(){
+      log.info(" exporting books ");
+      return NdjsonResponse.of( objectMapper, service::exportBooks );
+  }
+
   // GET PAGINADO E FILTRADO
 
   @GetMapping // get pra raiz. Quando passar por parametros
   /* vai pegar: ?title=%s&author=%s&page=0&size=100 e encaixar em BookDTO e Pageable
       title/author para BooktDTO e page/size para Pageable
   */
+  // ETag da listagem: revisão do catálogo + parâmetros. A revisão é lida antes da consulta, então no pior caso
+  // (alteração no meio) o ETag fica mais velho que os dados e o próximo poll só busca de novo
   @ApiOperation("Lists books by params")
-  public Page<BookDTO> find( BookDTO dto, Pageable pageRequest ){
-      Book filter = modelMapper.map(dto, Book.class); // converto para Book
-      Page<Book> result = service.find(filter, pageRequest);
-      List<BookDTO> list = result.getContent()
-              .stream() // serve pra agente fazer operaçôes sobre coleções
-              .map(entity -> modelMapper.map(entity, BookDTO.class)) // pra cada elemnto nessa coleçao vai mapear em um DTO
-              .collect(Collectors.toList()); // No final vamos ter uma lsita de BookDDTO
-      return new PageImpl<BookDTO>( list, pageRequest, result.getTotalElements() ); // conteudo, paginal atual, quantidade tottal de elementos
+  public ResponseEntity<Page<BookDTO>> find( BookDTO dto, Pageable pageRequest,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch ){
+      String etag = ETags.of(service.getCatalogueRevision(),
+              ETags.hash(dto.getId(), dto.getTitle(), dto.getAuthor(), dto.getIsbn(), pageRequest));
+      if( ETags.matches(ifNoneMatch, etag) ){
+          return ETags.notModified(etag);
+      }
+      Book filter = bookMapper.toEntity(dto); // converto para Book
+      // O service já devolve BookDTO projetado na consulta: sem entidade gerenciada e sem mapear aqui
+      return ETags.ok(etag, service.findProjected(filter, pageRequest));
   }
 
+  /* get :: /api/books?cursor=&size=20&sort=title
+    Paginação por cursor (opt-in): 'cursor' vazio na primeira página, depois o 'next' que voltou.
+    Sem count e sem offset, então a latência é a mesma na primeira ou na milésima página
+  */
+  @GetMapping(params = "cursor")
+  @ApiOperation("Lists books by params using a continuation cursor")
+  public ResponseEntity<CursorPageDTO<BookDTO>> findByCursor( BookDTO dto, @RequestParam String cursor, Pageable pageRequest,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch ){
+      String etag = ETags.of(service.getCatalogueRevision(),
+              ETags.hash(dto.getId(), dto.getTitle(), dto.getAuthor(), dto.getIsbn(), cursor, pageRequest));
+      if( ETags.matches(ifNoneMatch, etag) ){
+          return ETags.notModified(etag);
+      }
+      Keyset keyset = Keyset.of(cursor, pageRequest.getSort(), BookKeysetRepository.SORTABLE);
+      List<Book> books = service.findAfter(bookMapper.toEntity(dto), keyset, pageRequest.getPageSize() + 1);
+      return ETags.ok(etag, CursorPageDTO.of(books, pageRequest.getPageSize(), keyset, bookMapper::toDto));
+  }
 
-  
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package br.com.rafanthx13.libraryapi.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ETags fortes montados a partir de versões (ex: "3", "1589231-5fa2"), sem serializar a resposta para calcular hash.
+O controller confere o If-None-Match antes de buscar os dados: se bater, responde 304 sem ir ao service pesado.
+No PUT/PATCH o If-Match vira a lista de versões aceitas, conferida pelo próprio update (412 se não bater)
+*/
+public final class ETags {
+
+    private ETags() {
+    }
+
+    // "parte1-parte2-...", já com as aspas
+    public static String of(Object... parts) {
+        return Stream.of(parts).map(String::valueOf).collect(Collectors.joining("-", "\"", "\""));
+    }
+
+    // Hash curto dos parâmetros de uma listagem (filtro + página), para o ETag mudar junto com a consulta
+    public static String hash(Object... values) {
+        return Integer.toHexString(Objects.hash(values));
+    }
+
+    // If-None-Match: lista separada por vírgula, '*' ou W/"..." (a comparação do If-None-Match é fraca)
+    public static boolean matches(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // If-Match -> versões aceitas. null: sem condição (sem header ou '*'). Comparação forte: W/"..." nunca bate,
+    // e se nenhuma tag puder bater responde 412 já aqui
+    public static List<Long> versions(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        List<Long> versions = new ArrayList<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                return null;
+            }
+            if (tag.matches("\"\\d{1,18}\"")) {
+                versions.add(Long.valueOf(tag.substring(1, tag.length() - 1)));
+            }
+        }
+        if (versions.isEmpty()) {
+            throw preconditionFailed();
+        }
+        return versions;
+    }
+
+    public static ResponseStatusException preconditionFailed() {
+        return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Resource was modified (If-Match)");
+    }
+
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+    }
+
+    // no-cache: o cliente pode guardar a resposta, mas revalida sempre (If-None-Match) antes de usar
+    public static <T> ResponseEntity<T> ok(String etag, T body) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(body);
+    }
+}
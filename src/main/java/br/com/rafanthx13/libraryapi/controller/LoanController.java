@@ -1,26 +1,40 @@
 package br.com.rafanthx13.libraryapi.controller;
 
-import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookLoanCountDTO;
+import br.com.rafanthx13.libraryapi.data.dto.CursorPageDTO;
+import br.com.rafanthx13.libraryapi.data.dto.CustomerLoanCountDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
 import br.com.rafanthx13.libraryapi.data.dto.ReturnedLoanDTO;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.mapper.LoanMapper;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+import br.com.rafanthx13.libraryapi.data.repository.LoanKeysetRepository;
 import br.com.rafanthx13.libraryapi.service.BookService;
 import br.com.rafanthx13.libraryapi.service.LoanService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -28,13 +42,21 @@ import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/loans")
-@RequiredArgsConstructor // Com esas notaçâo: LoanService, BookService e ModelMapper já vao ser criados e injetados
+@RequiredArgsConstructor // Com esas notaçâo: LoanService, BookService e LoanMapper já vao ser criados e injetados
 // @Api("Book API") // Swagger
 public class LoanController {
 
+    // itens por requisição nas operações em lote (tudo numa transação só)
+    static final int BATCH_LIMIT = 10_000;
+    // campos do LoanDTO validados em cada item do lote de empréstimos
+    private static final String[] CHECKOUT_FIELDS = {"isbn", "customer"};
+    private static final BusinessException BATCH_TOO_LARGE = new BusinessException("Batch too large: max " + BATCH_LIMIT + " items");
+
 	private final LoanService service;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final LoanMapper loanMapper;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     // POST :: body
 
@@ -52,6 +74,7 @@ public class LoanController {
         Loan entity = Loan.builder()
                 .book(book)
                 .customer(dto.getCustomer())
+                .customerEmail(dto.getEmail()) // usado no aviso de atraso (LateLoanNotificationJob)
                 .loanDate(LocalDate.now())
                 .build();
         // Por fim, vou salvar esse Loan no banco e retorno o id do posts feito
@@ -59,33 +82,153 @@ public class LoanController {
         return entity.getId(); // Estamos retornando só o ID
     }
 
+    // POST :: lote de empréstimos [{isbn, customer, email}, ...] numa transação; devolve o resultado de cada item.
+    // Item nulo ou inválido não derruba o lote: vira INVALID na posição dele e só os válidos vão para o service
+    @PostMapping("batch")
+    public List<LoanItemResultDTO> createBatch(@RequestBody List<LoanDTO> dtos) {
+        checkBatchSize(dtos.size());
+        List<LoanItemResultDTO> results = new ArrayList<>(dtos.size());
+        List<LoanDTO> valid = new ArrayList<>(dtos.size());
+        for (LoanDTO dto : dtos) {
+            LoanItemResultDTO invalid = validate(dto);
+            results.add(invalid);
+            if (invalid == null) {
+                valid.add(dto);
+            }
+        }
+        return merge(results, valid.isEmpty() ? Collections.emptyList() : service.checkout(valid));
+    }
+
+    // GET :: um empréstimo, com a versão no ETag (é o valor do If-Match no PATCH)
+    @GetMapping("{id}")
+    public ResponseEntity<LoanDTO> get(@PathVariable Long id) {
+        return service.getById(id)
+                .map(loan -> ETags.ok(ETags.of(loan.getVersion()), loanMapper.toDto(loan)))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
     // PATH
 
-    // Busca pelo Loan e se achar, vai atualizar de acordo com o dto
+    // Devolução ({returned: true}) é um update direto no banco; o status diz se não existia ou se já estava devolvido.
+    // Reabrir ({returned: false}) busca pelo Loan e, se achar, atualiza de acordo com o dto.
+    // Com If-Match as duas só valem se o empréstimo ainda estiver na versão informada (senão 412)
     @PatchMapping("{id}") // O Body é um ReturnedLoanDTO
-    public void returnBook( @PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
+    public void returnBook( @PathVariable Long id, @RequestBody ReturnedLoanDTO dto,
+                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch ) {
+        List<Long> versions = ETags.versions(ifMatch);
+        if (Boolean.TRUE.equals(dto.getReturned())) {
+            LoanItemResultDTO.Status status = versions == null ? service.returnLoan(id) : service.returnLoan(id, versions);
+            if (status == LoanItemResultDTO.Status.NOT_FOUND) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            if (status == LoanItemResultDTO.Status.MODIFIED) {
+                throw ETags.preconditionFailed();
+            }
+            if (status == LoanItemResultDTO.Status.ALREADY_RETURNED) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Loan already returned");
+            }
+            return;
+        }
         Loan loan = service.getById(id)
         				   .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (versions != null && !versions.contains(loan.getVersion())) {
+            throw ETags.preconditionFailed();
+        }
         loan.setReturned(dto.getReturned());
-        service.update(loan);
+        service.update(loan); // versão mudou desde o getById: o @Version recusa e o advice responde 409
+    }
+
+    // PATH :: devolução em lote [id, id, ...]: um update para todos, com o resultado de cada id
+    @PatchMapping("batch")
+    public List<LoanItemResultDTO> returnBooks(@RequestBody List<Long> ids) {
+        checkBatchSize(ids.size());
+        List<LoanItemResultDTO> results = new ArrayList<>(ids.size());
+        List<Long> valid = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            results.add(id == null ? LoanItemResultDTO.invalid(null, null, Collections.singletonList("id must not be null")) : null);
+            if (id != null) {
+                valid.add(id);
+            }
+        }
+        return merge(results, valid.isEmpty() ? Collections.emptyList() : service.returnLoans(valid));
+    }
+
+    // null = item válido; senão o INVALID com os erros (propriedade + mensagem, como no import de livros).
+    // Só os campos que o checkout usa, a mesma regra do POST simples: isbn e customer obrigatórios, email opcional
+    private LoanItemResultDTO validate(LoanDTO dto) {
+        if (dto == null) {
+            return LoanItemResultDTO.invalid(null, null, Collections.singletonList("item must not be null"));
+        }
+        List<ConstraintViolation<LoanDTO>> violations = new ArrayList<>();
+        for (String field : CHECKOUT_FIELDS) {
+            violations.addAll(validator.validateProperty(dto, field));
+        }
+        if (violations.isEmpty()) {
+            return null;
+        }
+        List<String> errors = violations.stream()
+                .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                .sorted()
+                .collect(Collectors.toList());
+        return LoanItemResultDTO.invalid(dto.getIsbn(), dto.getCustomer(), errors);
+    }
+
+    // Os resultados do service vêm na ordem dos itens válidos: preenchem as posições vazias, na ordem
+    private static List<LoanItemResultDTO> merge(List<LoanItemResultDTO> results, List<LoanItemResultDTO> processed) {
+        Iterator<LoanItemResultDTO> next = processed.iterator();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, next.next());
+            }
+        }
+        return results;
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size > BATCH_LIMIT) {
+            throw BATCH_TOO_LARGE;
+        }
     }
 
     // GET FILTED
 
     @GetMapping
     public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
-    	// cada entity é um Loan que tem um Book dentro
-    	// O que temos que fazer é converter das entidades para os DTO
-        Page<Loan> result = service.find(dto, pageRequest); 
-        List<LoanDTO> loans = result.getContent().stream()
-                .map(entity -> { 
-                    Book book = entity.getBook();
-                    BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-                    LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
-                    loanDTO.setBook(bookDTO);
-                    return loanDTO;
-                }).collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
+    	// A consulta já projeta cada empréstimo (com o livro) em LoanDTO: sem entidades gerenciadas e sem mapear aqui
+        return service.findProjected(dto, pageRequest);
+    }
+
+    // GET :: ?cursor=&size=20&sort=loanDate,desc — paginação por cursor (sem count e sem offset), ver BookController.findByCursor
+    @GetMapping(params = "cursor")
+    public CursorPageDTO<LoanDTO> findByCursor(LoanFilterDTO dto, @RequestParam String cursor, Pageable pageRequest) {
+        Keyset keyset = Keyset.of(cursor, pageRequest.getSort(), LoanKeysetRepository.SORTABLE);
+        List<Loan> loans = service.findAfter(dto, keyset, pageRequest.getPageSize() + 1);
+        return CursorPageDTO.of(loans, pageRequest.getPageSize(), keyset, loanMapper::toDto);
+    }
+
+    // GET :: ?top=10 — totais, taxa de devolução e os livros mais emprestados (contadores em memória, sem varrer empréstimos)
+    @GetMapping("statistics")
+    public LoanStatisticsDTO statistics(@RequestParam(defaultValue = "10") int top) {
+        return service.getStatistics(top);
+    }
+
+    // GET :: quantas vezes o livro foi emprestado
+    @GetMapping("statistics/books/{id}")
+    public BookLoanCountDTO bookStatistics(@PathVariable Long id) {
+        return service.getBookStatistics(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    // GET :: empréstimos em aberto do customer
+    @GetMapping("statistics/customers/{customer}")
+    public CustomerLoanCountDTO customerStatistics(@PathVariable String customer) {
+        return service.getCustomerStatistics(customer);
+    }
+
+    // GET :: histórico completo de empréstimos em NDJSON, lido por cursor (sem paginação e sem count)
+    @GetMapping(value = "export", produces = NdjsonResponse.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        return NdjsonResponse.of(objectMapper, service::exportLoans);
     }
 
 }
\ No newline at end of file
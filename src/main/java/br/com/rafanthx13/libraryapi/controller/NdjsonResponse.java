@@ -0,0 +1,45 @@
+package br.com.rafanthx13.libraryapi.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/*
+NDJSON: um objeto JSON por linha. Usado na importação (entrada) e nas exportações (saída)
+A resposta é escrita direto no OutputStream conforme as linhas chegam (sem montar lista, sem flush por linha)
+*/
+public final class NdjsonResponse {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private NdjsonResponse() {
+    }
+
+    // 'rows' recebe o consumidor que escreve cada linha (ex: service::exportBooks)
+    public static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, Consumer<Consumer<T>> rows) {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null); // o separador entre as linhas é o '\n'
+                rows.accept(row -> {
+                    try {
+                        writer.writeValue(generator, row);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(MEDIA_TYPE)).body(body);
+    }
+}
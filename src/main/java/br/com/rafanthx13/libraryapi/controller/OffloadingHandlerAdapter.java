@@ -0,0 +1,76 @@
+package br.com.rafanthx13.libraryapi.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+
+/*
+Modo assíncrono dos controllers (library.async.enabled=true, ver AsyncConfig), sem mudar a assinatura dos endpoints:
++ Os argumentos (path, query, @RequestBody + @Valid) são resolvidos na thread do Tomcat, como antes
++ A execução do método (service, JPA) vai para o executor de JPA e a thread do Tomcat é liberada
++ O retorno volta pelo fluxo normal do Spring (WebAsyncManager): @ResponseStatus, Jackson e @ExceptionHandler iguais
+Só vale para os controllers da aplicação; endpoints que já são assíncronos (exportações em StreamingResponseBody) ficam como estão
+*/
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    private final AsyncTaskExecutor executor;
+    private final String basePackage;
+
+    public OffloadingHandlerAdapter(AsyncTaskExecutor executor, String basePackage) {
+        this.executor = executor;
+        this.basePackage = basePackage;
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        if (!handlerMethod.getBeanType().getName().startsWith(basePackage) || isAsync(handlerMethod.getReturnType())) {
+            return super.createInvocableHandlerMethod(handlerMethod);
+        }
+        return new OffloadedHandlerMethod(handlerMethod);
+    }
+
+    private static boolean isAsync(MethodParameter returnType) {
+        Class<?> type = returnType.getParameterType();
+        if (HttpEntity.class.isAssignableFrom(type)) {
+            type = ResolvableType.forMethodParameter(returnType).getGeneric(0).resolve(Object.class);
+        }
+        return Callable.class.isAssignableFrom(type)
+                || WebAsyncTask.class.isAssignableFrom(type)
+                || DeferredResult.class.isAssignableFrom(type)
+                || ListenableFuture.class.isAssignableFrom(type)
+                || CompletionStage.class.isAssignableFrom(type)
+                || StreamingResponseBody.class.isAssignableFrom(type)
+                || ResponseBodyEmitter.class.isAssignableFrom(type);
+    }
+
+    private class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        // Quando o resultado fica pronto, o Spring refaz o dispatch e o 'wrapConcurrentResult' trata o retorno como se fosse síncrono
+        @Override
+        public void invokeAndHandle(ServletWebRequest webRequest, ModelAndViewContainer mavContainer,
+                                    Object... providedArgs) throws Exception {
+            Object[] args = getMethodArgumentValues(webRequest, mavContainer, providedArgs);
+            WebAsyncTask<Object> task = new WebAsyncTask<>(null, executor, () -> doInvoke(args));
+            WebAsyncUtils.getAsyncManager(webRequest).startCallableProcessing(task, mavContainer);
+        }
+    }
+}
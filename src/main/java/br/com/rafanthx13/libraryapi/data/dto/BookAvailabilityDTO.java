@@ -0,0 +1,17 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Disponibilidade de um livro (respondida pelo BookAvailabilityIndex). Isbn sem livro cadastrado: id null e available false
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookAvailabilityDTO {
+
+    private Long id;
+    private String isbn;
+    private boolean available;
+
+}
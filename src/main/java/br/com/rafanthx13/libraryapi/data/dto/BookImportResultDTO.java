@@ -0,0 +1,34 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import br.com.rafanthx13.libraryapi.exception.ApiErrors;
+
+import java.util.ArrayList;
+
+/*
+Resultado da importação em massa de livros. Estende ApiErrors: os erros por linha
+saem no mesmo formato 'errors: [...]' das outras respostas de erro da API
+*/
+public class BookImportResultDTO extends ApiErrors {
+
+    private long imported;
+
+    public BookImportResultDTO() {
+        super(new ArrayList<>());
+    }
+
+    public void imported(long count) {
+        this.imported += count;
+    }
+
+    public void reject(String error) {
+        getErrors().add(error);
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return getErrors().size();
+    }
+}
@@ -0,0 +1,16 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Livro e quantas vezes ele já foi emprestado
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookLoanCountDTO {
+
+    private BookDTO book;
+    private long loans;
+
+}
@@ -0,0 +1,32 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Página da listagem por cursor: o conteúdo e o token da próxima página ('next' null = acabou).
+Sem totalElements de propósito: é o count que a paginação por cursor evita
+*/
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageDTO<T> {
+
+    private List<T> content;
+
+    private String next;
+
+    // 'rows' foi buscado com size + 1: se veio a linha extra há próxima página, e ela começa depois da última desta
+    public static <E, T> CursorPageDTO<T> of( List<E> rows, int size, Keyset keyset, Function<E, T> mapper ) {
+        List<E> page = rows.size() > size ? rows.subList(0, size) : rows;
+        String next = rows.size() > size ? keyset.after(page.get(page.size() - 1)).encode() : null;
+        return new CursorPageDTO<>(page.stream().map(mapper).collect(Collectors.toList()), next);
+    }
+}
@@ -0,0 +1,16 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Customer e quantos empréstimos ele tem em aberto
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerLoanCountDTO {
+
+    private String customer;
+    private long activeLoans;
+
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotEmpty;
+import java.time.LocalDate;
 
 // Coisas do Lomboo
 @Data
@@ -27,4 +28,14 @@ public class LoanDTO {
     private String email;
 
     private BookDTO book;
+
+    private LocalDate loanDate;
+
+    private Boolean returned;
+
+    // Usado pela projeção 'select new' da exportação (JPQL não aceita 'new' aninhado para o BookDTO)
+    public LoanDTO(Long id, String customer, String email, LocalDate loanDate, Boolean returned,
+                   Long bookId, String title, String author, String isbn) {
+        this(id, isbn, customer, email, new BookDTO(bookId, title, author, isbn), loanDate, returned);
+    }
 }
\ No newline at end of file
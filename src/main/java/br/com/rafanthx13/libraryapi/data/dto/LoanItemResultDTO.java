@@ -0,0 +1,42 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/*
+Resultado de um item das operações em lote (POST/PATCH /api/loans/batch), na mesma ordem do pedido:
++ empréstimo: isbn e customer pedidos, id do empréstimo criado (se criou) e o status
++ devolução: id do empréstimo e o status
++ item nulo ou inválido (sem isbn, sem customer, id nulo): status INVALID e os erros de validação, sem ir ao banco
+*/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoanItemResultDTO {
+
+    // MODIFIED: só na devolução condicional (If-Match), o empréstimo não está mais na versão informada
+    public enum Status { CREATED, BOOK_NOT_FOUND, ALREADY_LOANED, RETURNED, NOT_FOUND, ALREADY_RETURNED, MODIFIED, INVALID }
+
+    private Long id;
+    private String isbn;
+    private String customer;
+    private Status status;
+    private List<String> errors;
+
+    public LoanItemResultDTO(Long id, String isbn, String customer, Status status) {
+        this(id, isbn, customer, status, null);
+    }
+
+    public static LoanItemResultDTO invalid(String isbn, String customer, List<String> errors) {
+        return new LoanItemResultDTO(null, isbn, customer, Status.INVALID, errors);
+    }
+
+    public static LoanItemResultDTO returned(Long id, Status status) {
+        return new LoanItemResultDTO(id, null, null, status);
+    }
+}
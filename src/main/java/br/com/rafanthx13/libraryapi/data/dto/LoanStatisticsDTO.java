@@ -0,0 +1,21 @@
+package br.com.rafanthx13.libraryapi.data.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// GET /api/loans/statistics: totais, taxa de devolução (devolvidos / total) e os livros mais emprestados
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanStatisticsDTO {
+
+    private long totalLoans;
+    private long activeLoans;
+    private long returnedLoans;
+    private double returnRate;
+    private List<BookLoanCountDTO> mostBorrowed;
+
+}
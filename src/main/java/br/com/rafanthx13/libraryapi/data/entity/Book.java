@@ -9,7 +9,7 @@ import javax.persistence.*;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true) // toBuilder: cópia para alterar sem mexer na instância do cache (BookController.update)
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity // Essa classe é Entidade para JPA
@@ -18,7 +18,10 @@ public class Book {
 
     @Id // Identifica que é ChavePrimária
     @Column
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // diz que esse campo é auto-increment. IDENTY = É o banco que vai se virar
+    // Sequence com allocationSize: o Hibernate reserva 50 ids por ida ao banco e consegue agrupar os inserts em batch
+    // (com IDENTITY cada insert tem que ir sozinho para o banco devolver o id)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
 
     @Column
@@ -27,9 +30,15 @@ public class Book {
     @Column
     private String author;
 
-    @Column
+    @Column(unique = true) // índice único: o banco recusa isbn duplicado no próprio insert
     private String isbn;
 
+    // Incrementada pelo Hibernate a cada update: é o ETag do livro (GET /api/books/{id}).
+    // Primitivo de propósito: com Long, um Book.builder().id(x).build() (versão null) seria tratado como novo/transiente
+    @Version
+    @Column
+    private long version;
+
     @OneToMany( mappedBy = "book" )
     private List<Loan> loans;
 
@@ -13,11 +13,18 @@ import java.time.LocalDate; // Data
 @NoArgsConstructor // ter constutor sem parametro nenhum (vai combinar com o @Builder)
 @Builder // Lombok. Serve para gerar o builder, uma forma mais legível de gerar o objeto
 @Entity // Entidade JPA
+// Índices criados pela migration (db/migration/V1__create_schema.sql), além do da FK id_book; declarados aqui para documentar as consultas
+@Table(indexes = {
+        @Index(name = "idx_loan_customer", columnList = "customer"), // filtro por customer
+        @Index(name = "idx_loan_loan_date_returned", columnList = "loanDate, returned") // empréstimos atrasados
+})
 public class Loan {
 
     @Id // PK
     @Column
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // GERADO AUTO pelo Banco
+    // Sequence com allocationSize, como em Book: os inserts do empréstimo em lote vão em batch JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
 
     @Column(length = 100)
@@ -35,6 +42,23 @@ public class Loan {
 
     @Column
     private Boolean returned;
+
+    // Id do livro enquanto o empréstimo está ativo (null depois de devolvido). Como a coluna é unique,
+    // o próprio banco garante no máximo um empréstimo ativo por livro, no mesmo insert/update
+    @Column(name = "active_book_id", unique = true)
+    private Long activeBookId;
+
+    // Concorrência otimista, como em Book: o update do Hibernate vai com 'where version = ?' e os updates JPQL
+    // do LoanRepository incrementam a versão na mão. É o ETag de GET /api/loans/{id}
+    @Version
+    @Column
+    private long version;
+
+    @PrePersist
+    @PreUpdate
+    void syncActiveBookId() {
+        this.activeBookId = ( book == null || Boolean.TRUE.equals(returned) ) ? null : book.getId();
+    }
 }
 
 /* Loan é o empréstimo de um livro:
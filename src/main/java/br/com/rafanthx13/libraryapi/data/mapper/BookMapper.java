@@ -0,0 +1,20 @@
+package br.com.rafanthx13.libraryapi.data.mapper;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+// O MapStruct gera a implementação (BookMapperImpl) em tempo de compilação: sem reflexão em tempo de execução
+// componentModel = "spring" faz a implementação ser um @Component injetável nos controllers
+@Mapper(componentModel = "spring")
+public interface BookMapper {
+
+    BookDTO toDto(Book book);
+
+    @Mapping(target = "loans", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    Book toEntity(BookDTO dto);
+
+}
@@ -0,0 +1,17 @@
+package br.com.rafanthx13.libraryapi.data.mapper;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+// 'uses = BookMapper.class': o livro do empréstimo é convertido pelo BookMapper
+@Mapper(componentModel = "spring", uses = BookMapper.class)
+public interface LoanMapper {
+
+    @Mapping(target = "isbn", source = "book.isbn")
+    @Mapping(target = "email", source = "customerEmail")
+    LoanDTO toDto(Loan loan);
+
+}
@@ -0,0 +1,15 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Fragmento do BookRepository com a consulta por cursor (implementado em BookKeysetRepositoryImpl)
+public interface BookKeysetRepository {
+
+    List<String> SORTABLE = Arrays.asList("id", "title", "author", "isbn");
+
+    // Até 'limit' livros depois da posição do cursor, mesmos filtros do find (contains, ignore case)
+    List<Book> findAfter( Book filter, Keyset keyset, int limit );
+}
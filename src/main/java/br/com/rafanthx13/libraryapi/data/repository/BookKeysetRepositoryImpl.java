@@ -0,0 +1,46 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+class BookKeysetRepositoryImpl implements BookKeysetRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Book> findAfter(Book filter, Keyset keyset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> book = query.from(Book.class);
+
+        List<Predicate> where = new ArrayList<>();
+        contains(cb, book, "title", filter.getTitle(), where);
+        contains(cb, book, "author", filter.getAuthor(), where);
+        contains(cb, book, "isbn", filter.getIsbn(), where);
+        if (filter.getId() != null) {
+            where.add(cb.equal(book.get("id"), filter.getId()));
+        }
+        if (!keyset.isFirst()) {
+            where.add(KeysetPredicates.after(cb, book, keyset));
+        }
+        query.select(book).where(where.toArray(new Predicate[0]));
+        KeysetPredicates.orderBy(cb, query, book, keyset);
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    private static void contains(CriteriaBuilder cb, Root<Book> book, String field, String value, List<Predicate> where) {
+        if (value != null) {
+            where.add(cb.like(cb.lower(book.get(field)), "%" + value.toLowerCase() + "%"));
+        }
+    }
+}
@@ -1,13 +1,26 @@
 package br.com.rafanthx13.libraryapi.data.repository;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 // Extend JPARepository, e receb dois parametor, o tipo da entidade que está mapeanaod e o tipo do ID dessea entidade
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookKeysetRepository {
 
   /*
   QUERY METHODS: O JPA gera em tempo de compilaçâo o metodo que verifica a existencia por query method
@@ -18,5 +31,30 @@ public interface BookRepository extends JpaRepository<Book, Long> {
 
   Optional<Book> findByIsbn( String isbn);
 
+  // Quais desses isbns já estão cadastrados (uma consulta por lote da importação, usando o índice único)
+  @Query("select b.isbn from Book b where b.isbn in :isbns")
+  List<String> findExistingIsbns( @Param("isbns") Collection<String> isbns );
+
+  // Livros de vários isbns numa consulta só (empréstimo em lote)
+  List<Book> findByIsbnIn( Collection<String> isbns );
+
+  /*
+  Exportação: cursor forward-only (o Spring Data usa scroll do Hibernate para Stream) direto em BookDTO,
+  sem entidade no persistence context e sem count. Precisa de transação aberta enquanto o Stream é lido
+  */
+  @QueryHints( @QueryHint(name = HINT_FETCH_SIZE, value = "1000") )
+  @Query("select new br.com.rafanthx13.libraryapi.data.dto.BookDTO(b.id, b.title, b.author, b.isbn) from Book b")
+  Stream<BookDTO> streamAll();
+
+  // Listagens só de leitura projetadas direto em BookDTO (sem entidade gerenciada)
+  @Query(value = "select new br.com.rafanthx13.libraryapi.data.dto.BookDTO(b.id, b.title, b.author, b.isbn) from Book b",
+         countQuery = "select count(b.id) from Book b")
+  Page<BookDTO> findAllProjected( Pageable pageable );
+
+  @Query("select new br.com.rafanthx13.libraryapi.data.dto.BookDTO(b.id, b.title, b.author, b.isbn) from Book b where b.id in :ids")
+  List<BookDTO> findProjectedByIdIn( @Param("ids") Collection<Long> ids );
+
+  // Lê a tabela em lotes ordenados por id (usado para montar o BookSearchIndex). Retornar List nâo dispara count
+  List<Book> findByIdGreaterThanOrderByIdAsc( Long id, Pageable pageable );
   
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+/*
+Nomes das constraints das migrations (db/migration) que viram erro de negócio. Só a violação daquela constraint é
+traduzida: coluna longa demais, not null ou FK inválida continuam como DataIntegrityViolationException (erro de verdade)
+O nome vem da ConstraintViolationException do Hibernate; sem ele, do SQLState de unique (23505) + nome na mensagem.
+No H2 o nome chega como o do índice (ex: PUBLIC.UK_BOOK_ISBN_INDEX_1), por isso a comparação é por 'contém'
+*/
+public final class Constraints {
+
+    public static final String UK_BOOK_ISBN = "uk_book_isbn";
+    public static final String UK_LOAN_ACTIVE_BOOK_ID = "uk_loan_active_book_id";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private Constraints() {
+    }
+
+    public static boolean violated(DataIntegrityViolationException e, String constraint) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException && ((ConstraintViolationException) cause).getConstraintName() != null) {
+                return matches(((ConstraintViolationException) cause).getConstraintName(), constraint);
+            }
+            if (cause instanceof SQLException && UNIQUE_VIOLATION.equals(((SQLException) cause).getSQLState())) {
+                return matches(cause.getMessage(), constraint);
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String text, String constraint) {
+        return text != null && text.toLowerCase().contains(constraint);
+    }
+}
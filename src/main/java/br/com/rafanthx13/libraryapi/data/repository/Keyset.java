@@ -0,0 +1,122 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+
+/*
+Posição de uma listagem paginada por cursor (keyset): a ordenação (um campo + id para desempate)
+e os valores da última linha da página anterior. A próxima página é 'where (campo, id) > (valor, id)',
+sem offset e sem count, então o custo não cresce conforme o cliente avança.
+Para o cliente é um token opaco (Base64 de "campo:direção:id:valor", ou "campo:direção:id" quando o valor é null).
+Null é o menor valor: vem primeiro no 'asc' e por último no 'desc' (KeysetPredicates e o BookSearchIndex seguem isso)
+*/
+public final class Keyset {
+
+    // Erros de mensagem fixa: uma instância só (sem stack trace, ver BusinessException)
+    private static final BusinessException INVALID_CURSOR = new BusinessException("Invalid cursor.");
+    private static final BusinessException SINGLE_SORT_PROPERTY = new BusinessException("Cursor pagination supports a single sort property.");
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Long id;
+    private final String value;
+
+    private Keyset(String property, Sort.Direction direction, Long id, String value) {
+        this.property = property;
+        this.direction = direction;
+        this.id = id;
+        this.value = value;
+    }
+
+    // Token vazio = primeira página, com a ordenação pedida; senão a ordenação é a que veio no token
+    public static Keyset of(String token, Sort sort, List<String> sortable) {
+        if (token != null && !token.isEmpty()) {
+            return decode(token, sortable);
+        }
+        if (sort.isUnsorted()) {
+            return new Keyset("id", Sort.Direction.ASC, null, null);
+        }
+        if (sort.stream().count() > 1) {
+            throw SINGLE_SORT_PROPERTY;
+        }
+        Sort.Order order = sort.iterator().next();
+        checkSortable(order.getProperty(), sortable);
+        return new Keyset(order.getProperty(), order.getDirection(), null, null);
+    }
+
+    private static Keyset decode(String token, List<String> sortable) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 4);
+            Keyset keyset = new Keyset(parts[0], Sort.Direction.fromString(parts[1]), Long.valueOf(parts[2]),
+                    parts.length == 4 ? parts[3] : null);
+            checkSortable(keyset.property, sortable);
+            return keyset;
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw INVALID_CURSOR;
+        }
+    }
+
+    private static void checkSortable(String property, List<String> sortable) {
+        if (!sortable.contains(property)) {
+            throw new BusinessException("Cursor pagination cannot sort by " + property + ".");
+        }
+    }
+
+    // Posição logo depois dessa linha (última da página): lê o campo da ordenação e o id do próprio objeto
+    public Keyset after(Object row) {
+        BeanWrapperImpl wrapper = new BeanWrapperImpl(row);
+        Object last = wrapper.getPropertyValue(property);
+        return new Keyset(property, direction, (Long) wrapper.getPropertyValue("id"), last == null ? null : String.valueOf(last));
+    }
+
+    public String encode() {
+        String raw = property + ":" + direction.name() + ":" + id + (value == null ? "" : ":" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isFirst() {
+        return id == null;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    // Valor da última linha já no tipo do campo, para comparar no banco (null se a última linha não tinha valor)
+    @SuppressWarnings("unchecked")
+    public <T extends Comparable<? super T>> T typedValue(Class<?> type) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (Long.class.equals(type)) {
+                return (T) Long.valueOf(value);
+            }
+            if (LocalDate.class.equals(type)) {
+                return (T) LocalDate.parse(value);
+            }
+            return (T) value;
+        } catch (RuntimeException e) { // token adulterado: número ou data inválidos
+            throw INVALID_CURSOR;
+        }
+    }
+
+    public Sort sort() {
+        return property.equals("id") ? Sort.by(direction, "id") : Sort.by(direction, property, "id");
+    }
+}
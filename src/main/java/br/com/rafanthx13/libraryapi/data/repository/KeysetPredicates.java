@@ -0,0 +1,60 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Partes comuns das consultas por cursor (Criteria): o 'depois da última linha' e o 'order by campo, id'
+final class KeysetPredicates {
+
+    private KeysetPredicates() {
+    }
+
+    /*
+    (campo > valor) or (campo = valor and id > último id); com 'desc' os sinais invertem.
+    Null é o menor valor (ver Keyset): no 'asc' os nulls vêm antes de todos, no 'desc' depois de todos
+    + asc, última linha null: (campo is null and id > último id) or campo is not null
+    + desc, última linha null: campo is null and id < último id
+    + desc, última linha com valor: o de cima or campo is null
+    */
+    static <T extends Comparable<? super T>> Predicate after(CriteriaBuilder cb, Root<?> root, Keyset keyset) {
+        Path<Long> id = root.get("id");
+        boolean asc = keyset.getDirection() == Sort.Direction.ASC;
+        Predicate afterId = asc ? cb.greaterThan(id, keyset.getId()) : cb.lessThan(id, keyset.getId());
+        if (keyset.getProperty().equals("id")) {
+            return afterId;
+        }
+        Path<T> field = root.get(keyset.getProperty());
+        T value = keyset.typedValue(field.getJavaType());
+        if (value == null) {
+            Predicate nullAfterId = cb.and(cb.isNull(field), afterId);
+            return asc ? cb.or(nullAfterId, cb.isNotNull(field)) : nullAfterId;
+        }
+        Predicate afterField = asc ? cb.greaterThan(field, value) : cb.lessThan(field, value);
+        Predicate after = cb.or(afterField, cb.and(cb.equal(field, value), afterId));
+        return asc ? after : cb.or(after, cb.isNull(field));
+    }
+
+    // 'order by (campo is null), campo, id' na direção pedida: a posição dos nulls não depende do padrão do banco
+    static void orderBy(CriteriaBuilder cb, CriteriaQuery<?> query, Root<?> root, Keyset keyset) {
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : keyset.sort()) {
+            Expression<?> path = root.get(order.getProperty());
+            if (!order.getProperty().equals("id")) {
+                Expression<Integer> notNull = cb.<Integer>selectCase().when(cb.isNull(path), 0).otherwise(1);
+                orders.add(order.isAscending() ? cb.asc(notNull) : cb.desc(notNull));
+            }
+            orders.add(order.isAscending() ? cb.asc(path) : cb.desc(path));
+        }
+        query.orderBy(orders);
+    }
+}
@@ -0,0 +1,26 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/*
+Fragmento do LoanRepository com a busca de empréstimos por isbn e/ou customer (implementado em LoanFilterRepositoryImpl).
+A consulta é montada com os campos que vieram no filtro, para cada combinação usar o seu índice:
++ só isbn: livro pelo índice único do isbn e os empréstimos pelo índice da FK
++ só customer: índice de customer
++ os dois: union das duas consultas acima (um 'isbn = ? or customer = ?' varre a tabela de empréstimos)
++ nenhum: página vazia, sem ir ao banco
+Ordenação só por LoanKeysetRepository.SORTABLE, sempre com o id no final (a union precisa de ordem estável para paginar)
+*/
+public interface LoanFilterRepository {
+
+    // Empréstimos com o livro no mesmo select
+    Page<Loan> findByFilter( LoanFilterDTO filter, Pageable pageable );
+
+    // Mesma busca projetada direto em LoanDTO (sem entidade gerenciada)
+    Page<LoanDTO> findProjectedByFilter( LoanFilterDTO filter, Pageable pageable );
+}
@@ -0,0 +1,158 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class LoanFilterRepositoryImpl implements LoanFilterRepository {
+
+    // Propriedade ordenável -> coluna na union
+    private static final Map<String, String> UNION_COLUMNS = new HashMap<>();
+    static {
+        UNION_COLUMNS.put("id", "u.id");
+        UNION_COLUMNS.put("loanDate", "u.loan_date");
+        UNION_COLUMNS.put("customer", "u.customer");
+    }
+
+    // As colunas ordenáveis vão no select dos dois lados (o order by da union só enxerga o que foi selecionado)
+    private static final String UNION = " ( select l.id, l.loan_date, l.customer from loan l join book b on b.id = l.id_book where b.isbn = :isbn "
+            + " union select l.id, l.loan_date, l.customer from loan l where l.customer = :customer ) u ";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Loan> findByFilter(LoanFilterDTO filter, Pageable pageable) {
+        if (filter.getIsbn() != null && filter.getCustomer() != null) {
+            return findUnion(filter, pageable, ids -> entityManager
+                    .createQuery(" select l from Loan l join fetch l.book where l.id in :ids ", Loan.class)
+                    .setParameter("ids", ids)
+                    .getResultList(), Loan::getId);
+        }
+        // fetch join: o mapper lê o livro sem outro select
+        return findSingle(filter, pageable, Loan.class, true, (cb, loan, book) -> loan);
+    }
+
+    @Override
+    public Page<LoanDTO> findProjectedByFilter(LoanFilterDTO filter, Pageable pageable) {
+        if (filter.getIsbn() != null && filter.getCustomer() != null) {
+            return findUnion(filter, pageable, ids -> entityManager
+                    .createQuery(" select new br.com.rafanthx13.libraryapi.data.dto.LoanDTO(l.id, l.customer, l.customerEmail, "
+                            + " l.loanDate, l.returned, b.id, b.title, b.author, b.isbn) from Loan l join l.book b where l.id in :ids ", LoanDTO.class)
+                    .setParameter("ids", ids)
+                    .getResultList(), LoanDTO::getId);
+        }
+        return findSingle(filter, pageable, LoanDTO.class, false, (cb, loan, book) -> cb.construct(LoanDTO.class,
+                loan.get("id"), loan.get("customer"), loan.get("customerEmail"), loan.get("loanDate"), loan.get("returned"),
+                book.get("id"), book.get("title"), book.get("author"), book.get("isbn")));
+    }
+
+    // Um filtro só: uma consulta com o predicado dele (+ count, quando a página não diz o total sozinha)
+    @SuppressWarnings("unchecked")
+    private <T> Page<T> findSingle(LoanFilterDTO filter, Pageable pageable, Class<T> type, boolean fetchBook, LoanSelection<T> selection) {
+        if (filter.getIsbn() == null && filter.getCustomer() == null) {
+            return Page.empty(pageable);
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(type);
+        Root<Loan> loan = query.from(Loan.class);
+        Join<Loan, Book> book = fetchBook ? (Join<Loan, Book>) loan.<Loan, Book>fetch("book") : loan.join("book");
+        query.select(selection.select(cb, loan, book))
+                .where(matches(cb, loan, book, filter))
+                .orderBy(orders(cb, loan, pageable.getSort()));
+        List<T> content = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            CriteriaQuery<Long> count = cb.createQuery(Long.class);
+            Root<Loan> counted = count.from(Loan.class);
+            count.select(cb.count(counted)).where(matches(cb, counted, null, filter));
+            return entityManager.createQuery(count).getSingleResult();
+        });
+    }
+
+    // isbn e customer: a página de ids sai da union (cada lado no seu índice) e as linhas vêm depois, por id
+    @SuppressWarnings("unchecked")
+    private <T> Page<T> findUnion(LoanFilterDTO filter, Pageable pageable, Function<List<Long>, List<T>> load, Function<T, Long> id) {
+        Query idQuery = entityManager.createNativeQuery(" select u.id from " + UNION + " order by " + unionOrderBy(pageable.getSort()));
+        List<Long> ids = ((List<Number>) bind(idQuery, filter)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList())
+                .stream().map(Number::longValue).collect(Collectors.toList());
+
+        List<T> content = Collections.emptyList();
+        if (!ids.isEmpty()) {
+            Map<Long, T> byId = load.apply(ids).stream().collect(Collectors.toMap(id, Function.identity()));
+            content = ids.stream().map(byId::get).collect(Collectors.toList());
+        }
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> ((Number) bind(entityManager.createNativeQuery(" select count(*) from " + UNION), filter).getSingleResult()).longValue());
+    }
+
+    private static Query bind(Query query, LoanFilterDTO filter) {
+        return query.setParameter("isbn", filter.getIsbn()).setParameter("customer", filter.getCustomer());
+    }
+
+    // book null: join só se o filtro for por isbn (count)
+    private static Predicate matches(CriteriaBuilder cb, Root<Loan> loan, Join<Loan, Book> book, LoanFilterDTO filter) {
+        if (filter.getIsbn() != null) {
+            return cb.equal((book != null ? book : loan.join("book")).get("isbn"), filter.getIsbn());
+        }
+        return cb.equal(loan.get("customer"), filter.getCustomer());
+    }
+
+    private static Order[] orders(CriteriaBuilder cb, Root<Loan> loan, Sort sort) {
+        return withId(sort).stream()
+                .map(order -> order.isAscending() ? cb.asc(loan.get(order.getProperty())) : cb.desc(loan.get(order.getProperty())))
+                .toArray(Order[]::new);
+    }
+
+    private static String unionOrderBy(Sort sort) {
+        return withId(sort).stream()
+                .map(order -> UNION_COLUMNS.get(order.getProperty()) + (order.isAscending() ? " asc" : " desc"))
+                .collect(Collectors.joining(", "));
+    }
+
+    // Ordenação pedida (só as propriedades de SORTABLE) + id como desempate
+    private static Sort withId(Sort sort) {
+        for (Sort.Order order : sort) {
+            if (!LoanKeysetRepository.SORTABLE.contains(order.getProperty())) {
+                throw new BusinessException("Loans cannot be sorted by " + order.getProperty() + ".");
+            }
+        }
+        return sort.getOrderFor("id") != null ? sort : sort.and(Sort.by("id"));
+    }
+
+    // O que o select devolve: a entidade ou o LoanDTO
+    @FunctionalInterface
+    private interface LoanSelection<T> {
+        Selection<? extends T> select(CriteriaBuilder cb, Root<Loan> loan, Join<Loan, Book> book);
+    }
+}
@@ -0,0 +1,17 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Fragmento do LoanRepository com a consulta por cursor (implementado em LoanKeysetRepositoryImpl)
+public interface LoanKeysetRepository {
+
+    List<String> SORTABLE = Arrays.asList("id", "loanDate", "customer");
+
+    // Até 'limit' empréstimos depois da posição do cursor, com o livro. Mesmo filtro do find (isbn ou customer):
+    // com os dois, union de um select por índice, como no LoanFilterRepository
+    List<Loan> findAfter( LoanFilterDTO filter, Keyset keyset, int limit );
+}
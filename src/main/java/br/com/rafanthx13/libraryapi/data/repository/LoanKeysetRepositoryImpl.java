@@ -0,0 +1,135 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class LoanKeysetRepositoryImpl implements LoanKeysetRepository {
+
+    // Propriedade ordenável -> coluna nos dois lados da union
+    private static final Map<String, String> UNION_COLUMNS = new HashMap<>();
+    static {
+        UNION_COLUMNS.put("id", "id");
+        UNION_COLUMNS.put("loanDate", "loan_date");
+        UNION_COLUMNS.put("customer", "customer");
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Loan> findAfter(LoanFilterDTO filter, Keyset keyset, int limit) {
+        if (filter.getIsbn() != null && filter.getCustomer() != null) {
+            return findUnionAfter(filter, keyset, limit);
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Loan> query = cb.createQuery(Loan.class);
+        Root<Loan> loan = query.from(Loan.class);
+        Join<Loan, Book> book = (Join<Loan, Book>) loan.<Loan, Book>fetch("book"); // fetch join: o mapper lê o isbn sem outro select
+
+        List<Predicate> matches = new ArrayList<>();
+        if (filter.getIsbn() != null) {
+            matches.add(cb.equal(book.get("isbn"), filter.getIsbn()));
+        }
+        if (filter.getCustomer() != null) {
+            matches.add(cb.equal(loan.get("customer"), filter.getCustomer()));
+        }
+        // um filtro só (sem nenhum dos dois não encontra nada)
+        Predicate where = cb.or(matches.toArray(new Predicate[0]));
+        if (!keyset.isFirst()) {
+            where = cb.and(where, KeysetPredicates.after(cb, loan, keyset));
+        }
+        query.select(loan).where(where);
+        KeysetPredicates.orderBy(cb, query, loan, keyset);
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    /*
+    isbn e customer: como no LoanFilterRepositoryImpl, a union de um select por índice (isbn -> livro -> FK; customer)
+    no lugar do 'isbn = ? or customer = ?'. O 'depois do cursor' entra nos dois lados (cada um já corta no seu índice)
+    e a ordem por cursor (nulls como o menor valor, ver KeysetPredicates) vai por fora; as linhas vêm depois, por id
+    */
+    @SuppressWarnings("unchecked")
+    private List<Loan> findUnionAfter(LoanFilterDTO filter, Keyset keyset, int limit) {
+        Object value = keyset.isFirst() ? null : value(keyset);
+        String after = keyset.isFirst() ? "" : " and " + after(keyset, value != null);
+        Query idQuery = entityManager.createNativeQuery(" select u.id from ( "
+                + " select l.id, l.loan_date, l.customer from loan l join book b on b.id = l.id_book where b.isbn = :isbn " + after
+                + " union select l.id, l.loan_date, l.customer from loan l where l.customer = :customer " + after
+                + " ) u order by " + orderBy(keyset))
+                .setParameter("isbn", filter.getIsbn())
+                .setParameter("customer", filter.getCustomer());
+        if (!keyset.isFirst()) {
+            idQuery.setParameter("lastId", keyset.getId());
+            if (value != null) {
+                idQuery.setParameter("value", value);
+            }
+        }
+        List<Long> ids = ((List<Number>) idQuery.setMaxResults(limit).getResultList())
+                .stream().map(Number::longValue).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Loan> byId = entityManager
+                .createQuery(" select l from Loan l join fetch l.book where l.id in :ids ", Loan.class)
+                .setParameter("ids", ids)
+                .getResultList()
+                .stream().collect(Collectors.toMap(Loan::getId, Function.identity()));
+        return ids.stream().map(byId::get).collect(Collectors.toList());
+    }
+
+    // Mesmas regras do KeysetPredicates.after, em SQL sobre as colunas de 'loan l'
+    private static String after(Keyset keyset, boolean hasValue) {
+        boolean asc = keyset.getDirection() == Sort.Direction.ASC;
+        String afterId = asc ? "l.id > :lastId" : "l.id < :lastId";
+        if (keyset.getProperty().equals("id")) {
+            return afterId;
+        }
+        String column = "l." + UNION_COLUMNS.get(keyset.getProperty());
+        if (!hasValue) {
+            return asc ? " ( ( " + column + " is null and " + afterId + " ) or " + column + " is not null ) "
+                       : " ( " + column + " is null and " + afterId + " ) ";
+        }
+        String after = column + (asc ? " > :value" : " < :value") + " or ( " + column + " = :value and " + afterId + " )";
+        return " ( " + after + (asc ? "" : " or " + column + " is null") + " ) ";
+    }
+
+    private Object value(Keyset keyset) {
+        if (keyset.getProperty().equals("id")) {
+            return null;
+        }
+        return keyset.typedValue(entityManager.getMetamodel().entity(Loan.class).getAttribute(keyset.getProperty()).getJavaType());
+    }
+
+    // 'order by (campo is null), campo, id' na direção do cursor, sobre as colunas da union
+    private static String orderBy(Keyset keyset) {
+        String direction = keyset.getDirection() == Sort.Direction.ASC ? " asc" : " desc";
+        return keyset.sort().stream()
+                .map(order -> {
+                    String column = "u." + UNION_COLUMNS.get(order.getProperty());
+                    return order.getProperty().equals("id") ? column + direction
+                            : "case when " + column + " is null then 0 else 1 end" + direction + ", " + column + direction;
+                })
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -1,5 +1,6 @@
 package br.com.rafanthx13.libraryapi.data.repository;
 
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
 
@@ -7,13 +8,23 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanKeysetRepository, LoanFilterRepository {
 
 	// True :: Livro Está emprestado; False: Livro Está disponível
 	// Eu conto a quantidade de linhas que tenham o livro e returned é Null/False
@@ -21,15 +32,71 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
             " from Loan l where l.book = :book and ( l.returned is null or l.returned is false ) ")
     boolean existsByBookAndNotReturned( @Param("book") Book book );
 
-    // GET Filted
-    // Perceba que '@Param("isbn")' vai ser mapeado par aum dado mesmo na consulta SQL
-    // Mandar Pageable vai automaticamente voltar pagiado
-    @Query( value = " select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer =:customer ")
-    Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
-
     // O 'Pageable pageable' é opcional. Sem ele vem todos os dados, com ele vai vir paginado de acordo com o que vocÊ mandar
     Page<Loan> findByBook( Book book, Pageable pageable );
 
     @Query(" select l from Loan l where l.loanDate <= :threeDaysAgo and ( l.returned is null or l.returned is false ) ")
     List<Loan> findByLoanDateLessThanAndNotReturned( @Param("threeDaysAgo") LocalDate threeDaysAgo );
+
+    // Devolução em lote: (id, returned) dos empréstimos pedidos, com lock nas linhas até o fim da transação
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(" select l.id, l.returned from Loan l where l.id in :ids ")
+    List<Object[]> findReturnStateByIdIn( @Param("ids") Collection<Long> ids );
+
+    // Um único update para o lote. O @PreUpdate não roda em update JPQL, então o active_book_id é limpo aqui
+    @Modifying
+    @Query(" update Loan l set l.returned = true, l.activeBookId = null, l.version = l.version + 1 " +
+            " where l.id in :ids and ( l.returned is null or l.returned = false ) ")
+    int markReturned( @Param("ids") Collection<Long> ids );
+
+    // Devolução de um empréstimo: 1 linha afetada = devolvido agora; 0 = não existe ou já estava devolvido
+    @Modifying
+    @Query(" update Loan l set l.returned = true, l.activeBookId = null, l.version = l.version + 1 " +
+            " where l.id = :id and ( l.returned is null or l.returned = false ) ")
+    int markReturnedById( @Param("id") Long id );
+
+    // Devolução condicional (If-Match): a mesma, só se o empréstimo ainda estiver numa das versões informadas
+    @Modifying
+    @Query(" update Loan l set l.returned = true, l.activeBookId = null, l.version = l.version + 1 " +
+            " where l.id = :id and l.version in :versions and ( l.returned is null or l.returned = false ) ")
+    int markReturnedByIdAndVersionIn( @Param("id") Long id, @Param("versions") Collection<Long> versions );
+
+    // Só a versão (sem carregar o empréstimo e o livro): separa os motivos da devolução condicional que não alterou nada
+    @Query(" select l.version from Loan l where l.id = :id ")
+    Optional<Long> findVersionById( @Param("id") Long id );
+
+    // (id, livro) dos empréstimos ativos, em lotes por id: usado para montar o BookAvailabilityIndex
+    @Query(" select l.id, l.activeBookId from Loan l where l.id > :id and l.activeBookId is not null order by l.id ")
+    List<Object[]> findActiveAfter( @Param("id") Long id, Pageable pageable );
+
+    // Quais desses livros já têm empréstimo ativo (empréstimo em lote)
+    @Query(" select l.activeBookId from Loan l where l.activeBookId in :bookIds ")
+    List<Long> findActiveBookIds( @Param("bookIds") Collection<Long> bookIds );
+
+    // (id, loanDate) dos empréstimos em aberto, em lotes por id: usado para montar o OverdueLoanIndex
+    @Query(" select l.id, l.loanDate from Loan l where l.id > :id and ( l.returned is null or l.returned is false ) order by l.id ")
+    List<Object[]> findOpenAfter( @Param("id") Long id, Pageable pageable );
+
+    // Maior id de empréstimo: a marca d'água do rebuild do LoanStatisticsIndex (null sem empréstimos)
+    @Query(" select max(l.id) from Loan l ")
+    Long findMaxId();
+
+    // Total de empréstimos de cada livro até o id 'maxId', agregado no banco: usado para montar/conferir o LoanStatisticsIndex
+    @Query(" select l.book.id, count(l.id) from Loan l where l.book is not null and l.id <= :maxId group by l.book.id ")
+    List<Object[]> countLoansByBook( @Param("maxId") Long maxId );
+
+    // (id, customer) dos empréstimos em aberto até o id 'maxId', em lotes por id: usado para montar o LoanStatisticsIndex
+    @Query(" select l.id, l.customer from Loan l where l.id > :id and l.id <= :maxId " +
+            " and ( l.returned is null or l.returned is false ) order by l.id ")
+    List<Object[]> findOpenCustomersAfter( @Param("id") Long id, @Param("maxId") Long maxId, Pageable pageable );
+
+    // Empréstimos (com o livro, no mesmo select) dos ids que o OverdueLoanIndex devolveu
+    @Query(" select l from Loan l join fetch l.book where l.id in :ids ")
+    List<Loan> findWithBookByIdIn( @Param("ids") Collection<Long> ids );
+
+    // Exportação do histórico: cursor forward-only direto em LoanDTO (livro junto, no mesmo select), sem count
+    @QueryHints( @QueryHint(name = HINT_FETCH_SIZE, value = "1000") )
+    @Query(" select new br.com.rafanthx13.libraryapi.data.dto.LoanDTO(l.id, l.customer, l.customerEmail, l.loanDate, " +
+            " l.returned, b.id, b.title, b.author, b.isbn) from Loan l join l.book b ")
+    Stream<LoanDTO> streamAll();
 }
\ No newline at end of file
@@ -1,38 +1,48 @@
 package br.com.rafanthx13.libraryapi.exception;
 
-import br.com.rafanthx13.libraryapi.exception.BusinessException;
-
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.ObjectError;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+// Corpo das respostas de erro: { "errors": [...] }. As respostas de mensagem fixa são montadas uma vez só
+// (ApiErrors.of em constantes) e compartilhadas entre as requisições: a lista de uma mensagem é imutável
 public class ApiErrors {
 
-  private List<String> errors;
+  // ResponseStatusException sem 'reason' (ex: os 404): sempre a mesma resposta
+  public static final ApiErrors NO_REASON = ApiErrors.of(null);
+
+  private final List<String> errors;
 
   // Contrutor que colocar em 'this.erros' um array de erros que vinher de bidingResult
   // Captura erros de Validação
   public ApiErrors(BindingResult bindingResult) {
-    this.errors = new ArrayList<>();
-    bindingResult.getAllErrors().forEach( 
-      error -> this.errors.add(error.getDefaultMessage())  
-    );
+    List<ObjectError> all = bindingResult.getAllErrors();
+    this.errors = new ArrayList<>(all.size());
+    for (ObjectError error : all) {
+      this.errors.add(error.getDefaultMessage());
+    }
   }
 
-  public ApiErrors(BusinessException ex) {
-    this.errors = Arrays.asList(ex.getMessage());
+  // Lista de erros montada por quem chama (ex: erros por linha da importação de livros)
+  public ApiErrors(List<String> errors) {
+    this.errors = errors;
   }
 
- public ApiErrors(ResponseStatusException ex) {
-      this.errors = Arrays.asList(ex.getReason());
+  public ApiErrors(ResponseStatusException ex) {
+    this.errors = Collections.singletonList(ex.getReason());
   }
 
+  // Uma mensagem só, em lista imutável
+  public static ApiErrors of(String message) {
+    return new ApiErrors(Collections.singletonList(message));
+  }
 
   public List<String> getErrors() {
     return errors;
   }
 
-}
\ No newline at end of file
+}
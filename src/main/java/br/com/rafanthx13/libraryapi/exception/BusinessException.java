@@ -1,13 +1,24 @@
 package br.com.rafanthx13.libraryapi.exception;
 
-// Exceptiond a regra de negócio: ao cadastrar um livro com ISBN dupluicado;
+/*
+Exceptiond a regra de negócio: ao cadastrar um livro com ISBN dupluicado;
++ É um resultado esperado (vira 400 no ApplicationControllerAdvice), não um bug: não captura stack trace
+  nem aceita suppressed, então lançar custa quase nada
++ O corpo da resposta (ApiErrors) é montado junto com a exceção. As de mensagem fixa são constantes
+  (ex: LoanServiceImpl.BOOK_ALREADY_LOANED): a mesma instância é lançada sempre, sem alocar nada por erro
+*/
 public class BusinessException extends RuntimeException {
-    /**
-     *
-     */
-    // private static final long serialVersionUID = 1L;
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ApiErrors errors;
 
     public BusinessException(String s) {
-        super(s);
+        super(s, null, false, false);
+        this.errors = ApiErrors.of(s);
+    }
+
+    public ApiErrors getErrors() {
+        return errors;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+package br.com.rafanthx13.libraryapi.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Appender assíncrono do logback-spring.xml: quem loga só coloca o evento numa fila limitada (ArrayBlockingQueue, um
+ring buffer) e uma única thread escreve nos appenders de arquivo, em lotes:
++ drena até maxBatch eventos de uma vez e só faz flush no fim do lote (os appenders anexados ficam com immediateFlush=false)
++ fila cheia: overflow=block espera a thread de escrita (back-pressure), overflow=drop descarta e conta em 'dropped'.
+  WARN e ERROR nunca são descartados
++ async=false: escreve direto na thread de quem loga, com flush a cada evento (o comportamento do appender síncrono)
+Com a parada do contexto do logback (logging.register-shutdown-hook) a fila é esvaziada antes de fechar os arquivos
+*/
+public class BatchingAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    public enum Overflow { BLOCK, DROP }
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private boolean async = true;
+    private int queueSize = 8192;
+    private int maxBatch = 512;
+    private Overflow overflow = Overflow.DROP;
+
+    private BlockingQueue<ILoggingEvent> queue;
+    private Thread worker;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (queueSize < 1 || maxBatch < 1) {
+            addError("queueSize and maxBatch must be positive for appender [" + name + "]");
+            return;
+        }
+        Iterator<Appender<ILoggingEvent>> attached = appenders.iteratorForAppenders();
+        while (attached.hasNext()) {
+            Appender<ILoggingEvent> appender = attached.next();
+            if (appender instanceof OutputStreamAppender) {
+                ((OutputStreamAppender<ILoggingEvent>) appender).setImmediateFlush(!async);
+            }
+        }
+        if (async) {
+            queue = new ArrayBlockingQueue<>(queueSize);
+        }
+        // started antes da thread de escrita: ela sai do loop assim que isStarted() for false
+        super.start();
+        if (async) {
+            worker = new Thread(this::drain, "log-" + name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (!async) {
+            appenders.appendLoopOnAppenders(event);
+            return;
+        }
+        // mensagem formatada, MDC e nome da thread resolvidos aqui: a escrita acontece em outra thread
+        event.prepareForDeferredProcessing();
+        if (overflow == Overflow.DROP && !event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            if (!queue.offer(event)) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Thread de escrita: bloqueia até ter evento, drena o lote inteiro e faz um flush só
+    private void drain() {
+        List<ILoggingEvent> batch = new ArrayList<>(maxBatch);
+        while (isStarted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            write(batch);
+        }
+        // parando: o que sobrou na fila ainda é escrito
+        while (queue.drainTo(batch, maxBatch) > 0) {
+            write(batch);
+        }
+    }
+
+    private void write(List<ILoggingEvent> batch) {
+        for (ILoggingEvent event : batch) {
+            appenders.appendLoopOnAppenders(event);
+        }
+        batch.clear();
+        Iterator<Appender<ILoggingEvent>> attached = appenders.iteratorForAppenders();
+        while (attached.hasNext()) {
+            Appender<ILoggingEvent> appender = attached.next();
+            if (appender instanceof OutputStreamAppender && appender.isStarted()) {
+                try {
+                    ((OutputStreamAppender<ILoggingEvent>) appender).getOutputStream().flush();
+                } catch (IOException e) {
+                    addError("Failed to flush appender [" + appender.getName() + "]", e);
+                }
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setMaxBatch(int maxBatch) {
+        this.maxBatch = maxBatch;
+    }
+
+    public void setOverflow(String overflow) {
+        this.overflow = Overflow.valueOf(overflow.trim().toUpperCase());
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
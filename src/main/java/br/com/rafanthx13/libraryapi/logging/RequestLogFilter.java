@@ -0,0 +1,101 @@
+package br.com.rafanthx13.libraryapi.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+
+/*
+Uma linha JSON por requisição no logger 'library.requests' (no logback-spring.xml vai para o requests.log, assíncrono):
+{"ts":"...","method":"GET","endpoint":"/api/books/{id}","status":200,"latencyMs":1.234}
+'endpoint' é o padrão do mapeamento (não a URI com ids e query), então agrupa bem; sem mapeamento (404) vai a URI.
+Requisições assíncronas (exportações, library.async.enabled) são registradas quando terminam, com o status final
+*/
+public class RequestLogFilter extends OncePerRequestFilter {
+
+    public static final String LOGGER = "library.requests";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER);
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!log.isInfoEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            // Exceção sem @ExceptionHandler: quem responde é o container, com 500, depois deste filtro.
+            // O status da resposta ainda é o de antes (200), a não ser que ela já tenha sido enviada
+            log(request, response.isCommitted() ? response.getStatus() : HttpServletResponse.SC_INTERNAL_SERVER_ERROR, start);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    log(request, response.getStatus(), start);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            log(request, response.getStatus(), start);
+        }
+    }
+
+    private static void log(HttpServletRequest request, int status, long start) {
+        long micros = (System.nanoTime() - start) / 1000;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        StringBuilder json = new StringBuilder(128)
+                .append("{\"ts\":\"").append(Instant.now())
+                .append("\",\"method\":\"").append(request.getMethod())
+                .append("\",\"endpoint\":");
+        string(json, pattern != null ? pattern.toString() : request.getRequestURI());
+        json.append(",\"status\":").append(status)
+                .append(",\"latencyMs\":").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            json.append(fraction < 10 ? "00" : "0");
+        }
+        log.info(json.append(fraction).append('}').toString());
+    }
+
+    // String JSON com escape (a URI de um 404 vem do cliente)
+    private static void string(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,165 @@
+package br.com.rafanthx13.libraryapi.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+Tempo de cada camada, por classe e método (timer library.layer, tags layer/class/method):
++ controller: métodos dos @RestController; também registra library.sql.statements (statements SQL do endpoint,
+  incluindo os do StreamingResponseBody das exportações, que rodam em outra thread; o timer é só o do método)
++ service: service.impl (inclui cache e commit da transação: o aspecto fica por fora dos outros)
++ repository: repositórios do Spring Data
++ mapper: conversões do MapStruct (entidade <-> DTO)
+Histogramas e buckets vêm do application.properties (management.metrics.distribution.*)
+*/
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LayerMetricsAspect {
+
+    public static final String LAYER_TIMER = "library.layer";
+    public static final String SQL_STATEMENTS = "library.sql.statements";
+
+    private final MeterRegistry registry;
+
+    // Meters por (classe do proxy, método): achar um meter no registry monta as Tags a cada chamada; o cache evita isso
+    private final Map<Class<?>, Map<Method, Meters>> meters = new ConcurrentHashMap<>();
+
+    public LayerMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("within(@org.springframework.web.bind.annotation.RestController *) && execution(public * *(..))")
+    public Object controller(ProceedingJoinPoint joinPoint) throws Throwable {
+        Meters meters = meters(joinPoint, "controller");
+        long statements = SqlStatementCounter.current();
+        long start = System.nanoTime();
+        boolean streaming = false;
+        try {
+            Object result = joinPoint.proceed();
+            StreamingResponseBody body = streamingBody(result);
+            if (body == null) {
+                return result;
+            }
+            streaming = true;
+            return withBody(result, counted(body, meters, SqlStatementCounter.current() - statements));
+        } finally {
+            meters.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!streaming) {
+                meters.statements.record(SqlStatementCounter.current() - statements);
+            }
+        }
+    }
+
+    // StreamingResponseBody (exportações NDJSON) roda depois, em outra thread (o contador é por thread): o SQL do
+    // corpo é contado lá e registrado junto com o do método do controller, uma amostra por requisição
+    private static StreamingResponseBody counted(StreamingResponseBody body, Meters meters, long statements) {
+        return out -> {
+            long start = SqlStatementCounter.current();
+            try {
+                body.writeTo(out);
+            } finally {
+                meters.statements.record(statements + SqlStatementCounter.current() - start);
+            }
+        };
+    }
+
+    private static StreamingResponseBody streamingBody(Object result) {
+        if (result instanceof StreamingResponseBody) {
+            return (StreamingResponseBody) result;
+        }
+        if (result instanceof ResponseEntity && ((ResponseEntity<?>) result).getBody() instanceof StreamingResponseBody) {
+            return (StreamingResponseBody) ((ResponseEntity<?>) result).getBody();
+        }
+        return null;
+    }
+
+    private static Object withBody(Object result, StreamingResponseBody body) {
+        if (result instanceof ResponseEntity) {
+            ResponseEntity<?> entity = (ResponseEntity<?>) result;
+            return new ResponseEntity<>(body, entity.getHeaders(), entity.getStatusCode());
+        }
+        return body;
+    }
+
+    @Around("execution(public * br.com.rafanthx13.libraryapi.service.impl..*(..))")
+    public Object service(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "service");
+    }
+
+    @Around("this(org.springframework.data.repository.Repository)")
+    public Object repository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "repository");
+    }
+
+    @Around("execution(public * br.com.rafanthx13.libraryapi.data.mapper..*(..))")
+    public Object mapper(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "mapper");
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        Timer timer = meters(joinPoint, layer).timer;
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Meters meters(ProceedingJoinPoint joinPoint, String layer) {
+        Class<?> type = joinPoint.getThis().getClass();
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Map<Method, Meters> byMethod = meters.get(type);
+        if (byMethod == null) {
+            byMethod = meters.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+        }
+        Meters found = byMethod.get(method);
+        if (found == null) {
+            found = byMethod.computeIfAbsent(method, key -> new Meters(layer, name(joinPoint.getThis()), key.getName()));
+        }
+        return found;
+    }
+
+    // Repositórios são proxies JDK (o nome útil é o da interface); os demais são proxies CGLIB da própria classe
+    private static String name(Object proxy) {
+        if (Proxy.isProxyClass(proxy.getClass())) {
+            Class<?>[] interfaces = AopProxyUtils.proxiedUserInterfaces(proxy);
+            return interfaces.length > 0 ? interfaces[0].getSimpleName() : proxy.getClass().getSimpleName();
+        }
+        return ClassUtils.getUserClass(proxy).getSimpleName();
+    }
+
+    private class Meters {
+
+        final Timer timer;
+        final DistributionSummary statements;
+
+        Meters(String layer, String type, String method) {
+            this.timer = Timer.builder(LAYER_TIMER)
+                    .tags("layer", layer, "class", type, "method", method)
+                    .register(registry);
+            this.statements = "controller".equals(layer)
+                    ? DistributionSummary.builder(SQL_STATEMENTS)
+                        .tags("class", type, "method", method)
+                        .register(registry)
+                    : null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package br.com.rafanthx13.libraryapi.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/*
+Conta, por thread, os statements SQL que o Hibernate prepara (registrado como StatementInspector no MetricsConfig).
+O LayerMetricsAspect lê o contador antes e depois de cada endpoint: a diferença é o número de statements da requisição.
+Inserts em batch JDBC contam uma vez por lote; SQL que não passa pelo Hibernate (JdbcTemplate) não entra
+*/
+public class SqlStatementCounter implements StatementInspector {
+
+    // long[1] em vez de Long: incrementa sem alocar
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static long current() {
+        return COUNT.get()[0];
+    }
+}
@@ -1,11 +1,18 @@
 package br.com.rafanthx13.libraryapi.service;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookAvailabilityDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookImportResultDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
 
 public interface BookService {
 
@@ -19,6 +26,22 @@ public interface BookService {
 
   Page<Book> find( Book filter, Pageable pageRequest );
 
+  List<Book> findAfter( Book filter, Keyset keyset, int limit );
+
+  Page<BookDTO> findProjected( Book filter, Pageable pageRequest );
+
   Optional<Book> getBookByIsbn(String isbn);
+
+  BookImportResultDTO importBooks(Iterator<Book> books);
+
+  void exportBooks(Consumer<BookDTO> sink);
+
+  Optional<BookAvailabilityDTO> getAvailability(Long id);
+
+  List<BookAvailabilityDTO> getAvailability(List<String> isbns);
+
+  Optional<Long> getVersion(Long id);
+
+  long getCatalogueRevision();
   
 }
\ No newline at end of file
@@ -2,14 +2,22 @@ package br.com.rafanthx13.libraryapi.service;
 
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.dto.BookLoanCountDTO;
+import br.com.rafanthx13.libraryapi.data.dto.CustomerLoanCountDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
 import br.com.rafanthx13.libraryapi.controller.BookController;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface LoanService {
 
@@ -21,8 +29,28 @@ public interface LoanService {
 
     Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
 
+    List<Loan> findAfter(LoanFilterDTO filterDTO, Keyset keyset, int limit);
+
+    Page<LoanDTO> findProjected(LoanFilterDTO filterDTO, Pageable pageable);
+
     Page<Loan> getLoansByBook( Book book, Pageable pageable);
 
-    List<Loan> getAllLateLoans();
+    Page<Loan> getLateLoans(Pageable pageable);
+
+    List<LoanItemResultDTO> checkout(List<LoanDTO> requests);
+
+    List<LoanItemResultDTO> returnLoans(List<Long> ids);
+
+    LoanItemResultDTO.Status returnLoan(Long id);
+
+    LoanItemResultDTO.Status returnLoan(Long id, Collection<Long> versions);
+
+    void exportLoans(Consumer<LoanDTO> sink);
+
+    LoanStatisticsDTO getStatistics(int top);
+
+    Optional<BookLoanCountDTO> getBookStatistics(Long bookId);
+
+    CustomerLoanCountDTO getCustomerStatistics(String customer);
 
 }
\ No newline at end of file
@@ -2,46 +2,95 @@ package br.com.rafanthx13.libraryapi.service.impl;
 
 // import java.util.Optional;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 // import java.util.Collections;
-// import java.util.List;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import br.com.rafanthx13.libraryapi.config.CacheConfig;
+import br.com.rafanthx13.libraryapi.data.dto.BookAvailabilityDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookImportResultDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Constraints;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 // import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.service.BookService;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.BookSearchIndex;
 
 @Service
 public class BookServiceImpl implements BookService {
+
+  // livros por transação na importação (múltiplo do hibernate.jdbc.batch_size)
+  static final int IMPORT_CHUNK_SIZE = 1000;
+
+  // Erro de mensagem fixa: uma instância só (sem stack trace, ver BusinessException)
+  private static final BusinessException ISBN_ALREADY_REGISTERED = new BusinessException("Isbn já cadastrado.");
   
   private BookRepository repository;
+  private BookSearchIndex searchIndex;
+  private BookAvailabilityIndex availabilityIndex;
 
-  public BookServiceImpl(BookRepository repository) {
+  public BookServiceImpl(BookRepository repository, BookSearchIndex searchIndex, BookAvailabilityIndex availabilityIndex) {
     this.repository = repository;
+    this.searchIndex = searchIndex;
+    this.availabilityIndex = availabilityIndex;
   }
 
+  // Um único insert: o isbn é unique, então o duplicado é recusado pelo banco (sem o 'existsByIsbn' antes).
+  // Só a unique do isbn vira erro de negócio; outra violação (ex: título longo demais) segue como está
   @Override // Indica que sobrescreveu metodo da interface
   public Book save(Book book) {
-      if( repository.existsByIsbn(book.getIsbn()) ){
-          throw new BusinessException("Isbn já cadastrado.");
+      Book saved;
+      try {
+          saved = repository.saveAndFlush(book);
+      } catch (DataIntegrityViolationException e) {
+          if (Constraints.violated(e, Constraints.UK_BOOK_ISBN)) {
+              throw ISBN_ALREADY_REGISTERED;
+          }
+          throw e;
       }
-      return repository.save(book);
+      searchIndex.add(saved);
+      return saved;
   }
 
   @Override
+  @Caching(evict = {
+      @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ID, key = "#book.id"),
+      @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn")
+  })
   public void delete(Book book) {
       if(book == null || book.getId() == null){
           throw new IllegalArgumentException("Book id cant be null.");
       }
       this.repository.delete(book);
+      searchIndex.remove(book.getId());
   }
 
   // get simples sem paginaçõa
+  // Read-through: só vai ao banco se o livro não estiver no cache (livro inexistente não é cacheado).
+  // A mesma instância é devolvida a todas as requisições: só leitura, para alterar use uma cópia (book.toBuilder())
   @Override
+  @Cacheable(cacheNames = CacheConfig.BOOKS_BY_ID, unless = "#result == null")
   public Optional<Book> getById(Long id){
     return this.repository.findById(id);
   }
@@ -49,30 +98,195 @@ public class BookServiceImpl implements BookService {
 
     @Override
     public Page<Book> find( Book filter, Pageable pageRequest ) {
+        // Filtro de texto: responde pelo BookSearchIndex (sem 'like %x%' no banco) e só busca os livros da página
+        if( searchIndex.supports(filter, pageRequest) ){
+            Page<Long> ids = searchIndex.search(filter, pageRequest);
+            return new PageImpl<>(findAllInOrder(ids.getContent()), pageRequest, ids.getTotalElements());
+        }
         // VOu criar um Example de acordo com o filter, que será o critério apra buscar os livros filtrados
         Example<Book> example = Example.of(filter,
                 ExampleMatcher // vai permitir fazer as configuraçôes
                         .matching()
                         .withIgnoreCase() // para as cosia do tipo string, encaixar tanto apra maisuculo quanto minusculo
                         .withIgnoreNullValues() // se tiver passado algo null, vai ignorar
+                        // version é primitivo (nunca null): sem ignorar, todo filtro viraria 'version = 0' e
+                        // esconderia os livros já alterados; loans é a coleção do relacionamento, não é filtro
+                        .withIgnorePaths("version", "loans")
                         .withStringMatcher( ExampleMatcher.StringMatcher.CONTAINING ) 
                         // quando for comprar uma string, vai comparar com o seuginte critério: bastar ter um pedaço da palavra
         ) ;
         return repository.findAll(example, pageRequest);
     }
 
+  /*
+  Listagem só de leitura em BookDTO: filtro de texto pelo índice + DTOs por id; sem filtro, DTOs paginados direto.
+  O que sobra (ex: filtro por id, ordenação que o índice não conhece) usa o find normal; na transação read-only
+  o Hibernate carrega as entidades como read-only, sem snapshot para dirty-check
+  */
+  @Override
+  @Transactional(readOnly = true)
+  public Page<BookDTO> findProjected( Book filter, Pageable pageRequest ) {
+      if( searchIndex.supports(filter, pageRequest) ){
+          Page<Long> ids = searchIndex.search(filter, pageRequest);
+          Map<Long, BookDTO> found = repository.findProjectedByIdIn(ids.getContent())
+                  .stream()
+                  .collect(Collectors.toMap(BookDTO::getId, Function.identity()));
+          List<BookDTO> content = ids.getContent().stream()
+                  .map(found::get)
+                  .filter(book -> book != null)
+                  .collect(Collectors.toList());
+          return new PageImpl<>(content, pageRequest, ids.getTotalElements());
+      }
+      if( filter.getId() == null && filter.getTitle() == null && filter.getAuthor() == null && filter.getIsbn() == null ){
+          return repository.findAllProjected(pageRequest);
+      }
+      return find(filter, pageRequest)
+              .map( book -> new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()) );
+  }
+
+  // Paginação por cursor. Com filtro de texto a posição é resolvida no BookSearchIndex, senão 'where (campo, id) > ...' no banco
+  @Override
+  public List<Book> findAfter( Book filter, Keyset keyset, int limit ) {
+      if( searchIndex.supports(filter, PageRequest.of(0, limit, keyset.sort())) ){
+          return findAllInOrder(searchIndex.searchAfter(filter, keyset, limit));
+      }
+      return repository.findAfter(filter, keyset, limit);
+  }
+
+  // Disponibilidade só de memória: livro pelo BookSearchIndex, empréstimo ativo pelo BookAvailabilityIndex (sem banco)
+  @Override
+  public Optional<BookAvailabilityDTO> getAvailability(Long id) {
+      String isbn = searchIndex.isbnOf(id);
+      if( isbn == null ){
+          return Optional.empty();
+      }
+      return Optional.of(new BookAvailabilityDTO(id, isbn, availabilityIndex.isAvailable(id)));
+  }
+
+  @Override
+  public List<BookAvailabilityDTO> getAvailability(List<String> isbns) {
+      List<Long> ids = isbns.stream().map(searchIndex::idOf).collect(Collectors.toList());
+      boolean[] available = availabilityIndex.areAvailable(ids);
+      List<BookAvailabilityDTO> result = new ArrayList<>(isbns.size());
+      for (int i = 0; i < isbns.size(); i++) {
+          result.add(new BookAvailabilityDTO(ids.get(i), isbns.get(i), available[i]));
+      }
+      return result;
+  }
+
+  // Versão e revisão do catálogo vêm do BookSearchIndex: o 304 do If-None-Match não passa pelo cache nem pelo banco
+  @Override
+  public Optional<Long> getVersion(Long id) {
+      return Optional.ofNullable(searchIndex.versionOf(id));
+  }
+
+  @Override
+  public long getCatalogueRevision() {
+      return searchIndex.revision();
+  }
+
+  // Chamado a cada empréstimo (LoanController.create): os isbns populares ficam no cache
   @Override
+  @Cacheable(cacheNames = CacheConfig.BOOKS_BY_ISBN, unless = "#result == null")
   public Optional<Book> getBookByIsbn(String isbn) {
       return repository.findByIsbn(isbn); 
       // Query Method. Nâo precisa definir em Repository pois essa Notaçâo é própria da JPA
   }
 
+  /*
+  Importação em massa: consome o iterator em lotes, então o corpo da requisição nunca fica inteiro em memória.
+  Por lote: uma consulta 'isbn in (...)' para os já cadastrados e um saveAll (uma transação, inserts em batch JDBC).
+  Isbn repetido dentro do próprio arquivo é recusado aqui mesmo, sem ir ao banco
+  */
+  @Override
+  public BookImportResultDTO importBooks(Iterator<Book> books) {
+      BookImportResultDTO result = new BookImportResultDTO();
+      Set<String> seen = new HashSet<>();
+      List<Book> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+      while (books.hasNext()) {
+          Book book = books.next();
+          if (!seen.add(book.getIsbn())) {
+              result.reject("isbn " + book.getIsbn() + ": Isbn repetido na importação.");
+              continue;
+          }
+          chunk.add(book);
+          if (chunk.size() == IMPORT_CHUNK_SIZE) {
+              importChunk(chunk, result);
+              chunk.clear();
+          }
+      }
+      if (!chunk.isEmpty()) {
+          importChunk(chunk, result);
+      }
+      return result;
+  }
+
+  private void importChunk(List<Book> chunk, BookImportResultDTO result) {
+      Set<String> existing = new HashSet<>(repository.findExistingIsbns(
+              chunk.stream().map(Book::getIsbn).collect(Collectors.toList())));
+      List<Book> fresh = new ArrayList<>(chunk.size());
+      for (Book book : chunk) {
+          if (existing.contains(book.getIsbn())) {
+              result.reject("isbn " + book.getIsbn() + ": Isbn já cadastrado.");
+          } else {
+              fresh.add(book);
+          }
+      }
+      try {
+          List<Book> saved = repository.saveAll(fresh);
+          searchIndex.addAll(saved);
+          result.imported(saved.size());
+      } catch (DataIntegrityViolationException e) {
+          // Alguém cadastrou um desses isbns entre a consulta e o insert, ou um livro não cabe nas colunas: o lote
+          // voltou inteiro, refaz livro a livro para recusar só o(s) culpado(s), cada um com o motivo certo
+          for (Book book : fresh) {
+              book.setId(null); // o id gerado no lote que voltou não vale mais
+              try {
+                  save(book);
+                  result.imported(1);
+              } catch (BusinessException ex) {
+                  result.reject("isbn " + book.getIsbn() + ": " + ex.getMessage());
+              } catch (DataIntegrityViolationException ex) {
+                  result.reject("isbn " + book.getIsbn() + ": Livro recusado pelo banco (campo longo demais ou inválido).");
+              }
+          }
+      }
+  }
+
+  // A transação fica aberta enquanto o cursor é lido; cada linha vai direto para o 'sink' (nada acumula em memória)
+  @Override
+  @Transactional(readOnly = true)
+  public void exportBooks(Consumer<BookDTO> sink) {
+      try (Stream<BookDTO> books = repository.streamAll()) {
+          books.forEach(sink);
+      }
+  }
+
+  // Busca os livros dos ids que o índice devolveu, mantendo a ordem dele
+  private List<Book> findAllInOrder( List<Long> ids ) {
+      Map<Long, Book> found = repository.findAllById(ids)
+              .stream()
+              .collect(Collectors.toMap(Book::getId, Function.identity()));
+      return ids.stream()
+              .map(found::get)
+              .filter(book -> book != null)
+              .collect(Collectors.toList());
+  }
+
+  // Invalida depois do update (uma leitura concorrente pode ter recarregado a versão antiga antes do commit).
+  // Quem chama passa uma cópia alterada: a instância do cache nunca é modificada, então um update que falha não suja o cache
   @Override
+  @Caching(evict = {
+      @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ID, key = "#book.id"),
+      @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn")
+  })
   public Book update(Book book) {
       if(book == null || book.getId() == null){
           throw new IllegalArgumentException("Book id cant be null.");
       }
-      return this.repository.save(book); // é o meso que o de criar
+      Book updated = this.repository.save(book); // é o meso que o de criar
+      searchIndex.add(updated);
+      return updated;
   }
 
 }
\ No newline at end of file
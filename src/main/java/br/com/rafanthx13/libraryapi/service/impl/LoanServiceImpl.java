@@ -1,37 +1,87 @@
 package br.com.rafanthx13.libraryapi.service.impl;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookLoanCountDTO;
+import br.com.rafanthx13.libraryapi.data.dto.CustomerLoanCountDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Constraints;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
 import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
 import br.com.rafanthx13.libraryapi.service.LoanService;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.LoanStatisticsIndex;
+import br.com.rafanthx13.libraryapi.service.index.OverdueLoanIndex;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class LoanServiceImpl implements LoanService {
 
+    // ids/isbns por consulta 'in (...)' nas operações em lote
+    static final int BATCH_CHUNK_SIZE = 1000;
+
+    // Erro de mensagem fixa: uma instância só (sem stack trace, ver BusinessException)
+    private static final BusinessException BOOK_ALREADY_LOANED = new BusinessException("Book already loaned");
+
     private LoanRepository repository;
+    private BookRepository bookRepository;
+    private OverdueLoanIndex overdueIndex;
+    private BookAvailabilityIndex availabilityIndex;
+    private LoanStatisticsIndex statisticsIndex;
+    private int loanDays;
 
-    public LoanServiceImpl(LoanRepository repository) {
+    public LoanServiceImpl(LoanRepository repository, BookRepository bookRepository, OverdueLoanIndex overdueIndex,
+                           BookAvailabilityIndex availabilityIndex, LoanStatisticsIndex statisticsIndex,
+                           @Value("${library.loan.days:4}") int loanDays) {
         this.repository = repository;
+        this.bookRepository = bookRepository;
+        this.overdueIndex = overdueIndex;
+        this.availabilityIndex = availabilityIndex;
+        this.statisticsIndex = statisticsIndex;
+        this.loanDays = loanDays;
     }
 
-    // Antes de slavar empréstimo, verifica se o livro já não está sendo emprestado
-    // Busco emprestimo com esse livro que o retorned seja false (Nao foi retornado entâo está emprestado)
+    // Um único insert: se o livro já tiver empréstimo ativo, a unique de 'active_book_id' é violada
+    // e isso vira a BusinessException. Sem o 'exists' antes, não há corrida entre dois empréstimos simultâneos
     @Override
     public Loan save( Loan loan ) {
-        if( repository.existsByBookAndNotReturned( loan.getBook()) ){
-            throw new BusinessException("Book already loaned");
+        try {
+            Loan saved = repository.saveAndFlush(loan);
+            indexSaved(saved, true);
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            throw bookAlreadyLoaned(e);
         }
-        return repository.save(loan);
     }
 
     // QueryMethod do JPA: busca informaçôes por ID
@@ -40,15 +90,157 @@ public class LoanServiceImpl implements LoanService {
         return repository.findById(id);
     }
 
+    // Reabrir um empréstimo (returned = false) também pode violar a unique do livro
     @Override
     public Loan update(Loan loan) {
-        return repository.save(loan);
+        try {
+            Loan saved = repository.saveAndFlush(loan);
+            indexSaved(saved, false);
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            throw bookAlreadyLoaned(e);
+        }
+    }
+
+    /*
+    Empréstimo em lote, numa transação: por bloco de 1000 pedidos, uma consulta para os livros (isbn in ...) e outra
+    para os que já estão emprestados; depois um saveAll com inserts em batch JDBC (ids da loan_seq).
+    Isbn inexistente, livro emprestado ou repetido no lote viram status do item, não erro. Se outro empréstimo
+    pegar um desses livros entre a consulta e o insert, a unique de 'active_book_id' desfaz o lote inteiro
+    */
+    @Override
+    @Transactional
+    public List<LoanItemResultDTO> checkout(List<LoanDTO> requests) {
+        List<LoanItemResultDTO> results = new ArrayList<>(requests.size());
+        List<Loan> fresh = new ArrayList<>();
+        List<LoanItemResultDTO> created = new ArrayList<>();
+        Set<Long> taken = new HashSet<>();
+        for (List<LoanDTO> chunk : chunks(requests)) {
+            Map<String, Book> books = new HashMap<>();
+            for (Book book : bookRepository.findByIsbnIn(chunk.stream().map(LoanDTO::getIsbn).collect(Collectors.toSet()))) {
+                books.put(book.getIsbn(), book);
+            }
+            if (!books.isEmpty()) {
+                taken.addAll(repository.findActiveBookIds(books.values().stream().map(Book::getId).collect(Collectors.toList())));
+            }
+            for (LoanDTO request : chunk) {
+                LoanItemResultDTO result = new LoanItemResultDTO(null, request.getIsbn(), request.getCustomer(), null);
+                Book book = books.get(request.getIsbn());
+                if (book == null) {
+                    result.setStatus(LoanItemResultDTO.Status.BOOK_NOT_FOUND);
+                } else if (!taken.add(book.getId())) {
+                    result.setStatus(LoanItemResultDTO.Status.ALREADY_LOANED);
+                } else {
+                    result.setStatus(LoanItemResultDTO.Status.CREATED);
+                    fresh.add(Loan.builder()
+                            .book(book)
+                            .customer(request.getCustomer())
+                            .customerEmail(request.getEmail())
+                            .loanDate(LocalDate.now())
+                            .build());
+                    created.add(result);
+                }
+                results.add(result);
+            }
+        }
+        try {
+            repository.saveAll(fresh);
+            repository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw bookAlreadyLoaned(e);
+        }
+        for (int i = 0; i < fresh.size(); i++) {
+            created.get(i).setId(fresh.get(i).getId());
+        }
+        fresh.forEach(loan -> indexSaved(loan, true));
+        return results;
+    }
+
+    /*
+    Devolução em lote, numa transação: por bloco de 1000 ids, um select (id, returned) com lock nas linhas e um único
+    'update ... where id in (...)' para os que estavam em aberto. Nenhuma entidade é carregada.
+    Cada id recebe RETURNED, ALREADY_RETURNED ou NOT_FOUND, na ordem do pedido
+    */
+    @Override
+    @Transactional
+    public List<LoanItemResultDTO> returnLoans(List<Long> ids) {
+        Map<Long, LoanItemResultDTO.Status> status = new HashMap<>();
+        List<Long> returned = new ArrayList<>();
+        for (List<Long> chunk : chunks(new ArrayList<>(new LinkedHashSet<>(ids)))) {
+            List<Long> open = new ArrayList<>(chunk.size());
+            for (Object[] row : repository.findReturnStateByIdIn(chunk)) {
+                Long id = (Long) row[0];
+                if (Boolean.TRUE.equals(row[1])) {
+                    status.put(id, LoanItemResultDTO.Status.ALREADY_RETURNED);
+                } else {
+                    status.put(id, LoanItemResultDTO.Status.RETURNED);
+                    open.add(id);
+                }
+            }
+            if (!open.isEmpty()) {
+                repository.markReturned(open);
+                returned.addAll(open);
+            }
+        }
+        returned.forEach(this::indexReturned);
+
+        List<LoanItemResultDTO> results = new ArrayList<>(ids.size());
+        Set<Long> reported = new HashSet<>();
+        for (Long id : ids) {
+            LoanItemResultDTO.Status itemStatus = status.getOrDefault(id, LoanItemResultDTO.Status.NOT_FOUND);
+            if (!reported.add(id) && itemStatus == LoanItemResultDTO.Status.RETURNED) {
+                itemStatus = LoanItemResultDTO.Status.ALREADY_RETURNED; // id repetido no lote: só a primeira devolve
+            }
+            results.add(LoanItemResultDTO.returned(id, itemStatus));
+        }
+        return results;
     }
 
-    // Buscar loan filted. Aqui nâo é um query Method, entâo temod que implementar mesmo no repository
+    /*
+    Devolução sem carregar o empréstimo (nem o livro): um único 'update ... where id = ? and returned is not true'.
+    Só quando nenhuma linha muda é feita mais uma consulta (existsById) para separar "não existe" de "já devolvido"
+    */
+    @Override
+    @Transactional
+    public LoanItemResultDTO.Status returnLoan(Long id) {
+        if (repository.markReturnedById(id) == 1) {
+            indexReturned(id);
+            return LoanItemResultDTO.Status.RETURNED;
+        }
+        return repository.existsById(id) ? LoanItemResultDTO.Status.ALREADY_RETURNED : LoanItemResultDTO.Status.NOT_FOUND;
+    }
+
+    // Devolução condicional (If-Match): o mesmo update, com 'version in (...)'. Sem linha alterada, a versão atual diz
+    // o motivo; a precondição vem antes, então versão diferente é MODIFIED mesmo que já esteja devolvido
+    @Override
+    @Transactional
+    public LoanItemResultDTO.Status returnLoan(Long id, Collection<Long> versions) {
+        if (repository.markReturnedByIdAndVersionIn(id, versions) == 1) {
+            indexReturned(id);
+            return LoanItemResultDTO.Status.RETURNED;
+        }
+        return repository.findVersionById(id)
+                .map(version -> versions.contains(version) ? LoanItemResultDTO.Status.ALREADY_RETURNED : LoanItemResultDTO.Status.MODIFIED)
+                .orElse(LoanItemResultDTO.Status.NOT_FOUND);
+    }
+
+    // Buscar loan filted. Aqui nâo é um query Method: a consulta é montada com os campos do filtro (LoanFilterRepository)
     @Override
     public Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable) {
-        return repository.findByBookIsbnOrCustomer( filterDTO.getIsbn(), filterDTO.getCustomer(), pageable );
+        return repository.findByFilter( filterDTO, pageable );
+    }
+
+    // Listagem só de leitura: DTOs direto da consulta, numa transação read-only
+    @Override
+    @Transactional(readOnly = true)
+    public Page<LoanDTO> findProjected(LoanFilterDTO filterDTO, Pageable pageable) {
+        return repository.findProjectedByFilter( filterDTO, pageable );
+    }
+
+    // Paginação por cursor: sem offset e sem count
+    @Override
+    public List<Loan> findAfter(LoanFilterDTO filterDTO, Keyset keyset, int limit) {
+        return repository.findAfter(filterDTO, keyset, limit);
     }
 
     @Override
@@ -56,10 +248,114 @@ public class LoanServiceImpl implements LoanService {
         return repository.findByBook(book, pageable);
     }
 
+    // Atrasados vêm do OverdueLoanIndex (só os ids da página); o banco é lido apenas para montar essas linhas
     @Override
-    public List<Loan> getAllLateLoans() {
-        final Integer loanDays = 4;
-        LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-        return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+    public Page<Loan> getLateLoans(Pageable pageable) {
+        Page<Long> ids = overdueIndex.openedOnOrBefore(LocalDate.now().minusDays(loanDays), pageable);
+        if (ids.getContent().isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, ids.getTotalElements());
+        }
+        Map<Long, Loan> byId = new HashMap<>();
+        for (Loan loan : repository.findWithBookByIdIn(ids.getContent())) {
+            byId.put(loan.getId(), loan);
+        }
+        List<Loan> content = new ArrayList<>(ids.getContent().size());
+        for (Long id : ids.getContent()) {
+            Loan loan = byId.get(id);
+            if (loan == null || Boolean.TRUE.equals(loan.getReturned())) {
+                overdueIndex.close(id); // índice ficou para trás (ex.: removido por fora): corrige aqui
+                continue;
+            }
+            content.add(loan);
+        }
+        return new PageImpl<>(content, pageable, ids.getTotalElements());
+    }
+
+    // Estatísticas só da memória (LoanStatisticsIndex); o banco só é lido para os dados dos livros do resultado
+    @Override
+    public LoanStatisticsDTO getStatistics(int top) {
+        LoanStatisticsIndex.Summary summary = statisticsIndex.summary(top);
+        long returned = summary.getTotalLoans() - summary.getActiveLoans();
+        double returnRate = summary.getTotalLoans() == 0 ? 0 : (double) returned / summary.getTotalLoans();
+
+        Map<Long, BookDTO> books = new HashMap<>();
+        if (!summary.getMostBorrowed().isEmpty()) {
+            for (BookDTO book : bookRepository.findProjectedByIdIn(summary.getMostBorrowed().keySet())) {
+                books.put(book.getId(), book);
+            }
+        }
+        List<BookLoanCountDTO> mostBorrowed = summary.getMostBorrowed().entrySet().stream()
+                .map(entry -> new BookLoanCountDTO(books.get(entry.getKey()), entry.getValue()))
+                .collect(Collectors.toList());
+        return new LoanStatisticsDTO(summary.getTotalLoans(), summary.getActiveLoans(), returned, returnRate, mostBorrowed);
+    }
+
+    @Override
+    public Optional<BookLoanCountDTO> getBookStatistics(Long bookId) {
+        return bookRepository.findProjectedByIdIn(Collections.singleton(bookId)).stream()
+                .findFirst()
+                .map(book -> new BookLoanCountDTO(book, statisticsIndex.loansOf(bookId)));
+    }
+
+    @Override
+    public CustomerLoanCountDTO getCustomerStatistics(String customer) {
+        return new CustomerLoanCountDTO(customer, statisticsIndex.activeLoansOf(customer));
+    }
+
+    // Só a unique do empréstimo ativo é 'livro já emprestado'; customer longo demais, FK do livro etc. seguem como erro
+    private static RuntimeException bookAlreadyLoaned(DataIntegrityViolationException e) {
+        return Constraints.violated(e, Constraints.UK_LOAN_ACTIVE_BOOK_ID) ? BOOK_ALREADY_LOANED : e;
+    }
+
+    // Índices em memória (atrasados, disponibilidade e estatísticas) acompanham o empréstimo salvo / devolvido
+    private void indexSaved(Loan loan, boolean created) {
+        afterCommit(() -> {
+            overdueIndex.update(loan);
+            availabilityIndex.update(loan);
+            if (created) {
+                statisticsIndex.created(loan);
+            } else {
+                statisticsIndex.update(loan);
+            }
+        });
+    }
+
+    private void indexReturned(Long loanId) {
+        afterCommit(() -> {
+            overdueIndex.close(loanId);
+            availabilityIndex.close(loanId);
+            statisticsIndex.close(loanId);
+        });
+    }
+
+    // Os índices só mudam depois do commit (se a transação voltar, eles continuam certos); sem transação, na hora
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += BATCH_CHUNK_SIZE) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + BATCH_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    // Mesma ideia do BookServiceImpl.exportBooks: cursor lido dentro da transação, linha a linha
+    @Override
+    @Transactional(readOnly = true)
+    public void exportLoans(Consumer<LoanDTO> sink) {
+        try (Stream<LoanDTO> loans = repository.streamAll()) {
+            loans.forEach(sink);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Disponibilidade dos livros em memória: um bit por id de livro (ligado = tem empréstimo ativo).
++ Substitui o 'count' do existsByBookAndNotReturned para a pergunta "esse livro está disponível?"
++ 1M livros ocupam ~125KB de bitmap; além dele, só o livro de cada empréstimo em aberto (a devolução chega pelo id do empréstimo)
+É mantido pelo LoanServiceImpl depois do commit de cada empréstimo/devolução e reconstruído a partir do banco ao subir a aplicação.
+*/
+@Component
+public class BookAvailabilityIndex {
+
+    private static final int REBUILD_BATCH = 10_000;
+
+    private final LoanRepository repository;
+
+    private final BitSet loaned = new BitSet();
+    private final Map<Long, Integer> openLoanBooks = new HashMap<>(); // empréstimo em aberto -> livro
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BookAvailabilityIndex(LoanRepository repository) {
+        this.repository = repository;
+    }
+
+    // Carrega os empréstimos ativos (id, active_book_id) em lotes por id
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            loaned.clear();
+            openLoanBooks.clear();
+            long lastId = 0;
+            List<Object[]> batch;
+            do {
+                batch = repository.findActiveAfter(lastId, PageRequest.of(0, REBUILD_BATCH));
+                for (Object[] row : batch) {
+                    lastId = (Long) row[0];
+                    doOpen(lastId, (Long) row[1]);
+                }
+            } while (batch.size() == REBUILD_BATCH);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Empréstimo salvo: em aberto marca o livro como emprestado, devolvido libera
+    public void update(Loan loan) {
+        lock.writeLock().lock();
+        try {
+            doClose(loan.getId());
+            if (!Boolean.TRUE.equals(loan.getReturned()) && loan.getBook() != null) {
+                doOpen(loan.getId(), loan.getBook().getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close(Long loanId) {
+        lock.writeLock().lock();
+        try {
+            doClose(loanId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isAvailable(Long bookId) {
+        lock.readLock().lock();
+        try {
+            return isKey(bookId) && !loaned.get(key(bookId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Vários livros com um único lock de leitura (consulta em lote); id null = livro inexistente = indisponível.
+    // Id fora da faixa do bitmap (negativo ou acima de int) não é de livro indexado: também indisponível, sem exceção
+    public boolean[] areAvailable(List<Long> bookIds) {
+        boolean[] available = new boolean[bookIds.size()];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < available.length; i++) {
+                Long bookId = bookIds.get(i);
+                available[i] = isKey(bookId) && !loaned.get(key(bookId));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return available;
+    }
+
+    private void doOpen(Long loanId, Long bookId) {
+        openLoanBooks.put(loanId, key(bookId));
+        loaned.set(key(bookId));
+    }
+
+    private void doClose(Long loanId) {
+        Integer bookId = openLoanBooks.remove(loanId);
+        if (bookId != null) {
+            loaned.clear(bookId);
+        }
+    }
+
+    private static int key(Long id) {
+        return Math.toIntExact(id);
+    }
+
+    private static boolean isKey(Long id) {
+        return id != null && id >= 0 && id <= Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,468 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Índice invertido em memória (trigramas) sobre title, author e isbn dos livros.
++ Substitui o 'lower(col) like %x%' do Example, que faz full scan na tabela
++ Cada trigrama de cada campo aponta para a lista ordenada dos ids que o contém
++ A busca intersecta as listas dos trigramas do termo e confirma o 'contains' (ignore case) em cada candidato
++ Termos com menos de 3 letras não têm trigrama: nesse caso os livros em memória são varridos
+É mantido pelo BookServiceImpl no save/update/delete e reconstruído a partir do banco ao subir a aplicação.
+Guarda também a versão de cada livro e uma revisão do catálogo (muda a cada alteração), usadas nos ETags de /api/books.
+*/
+@Component
+public class BookSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int REBUILD_BATCH = 10_000;
+
+    private final BookRepository repository;
+
+    private final Map<Integer, IndexedBook> books = new HashMap<>();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<String, Integer> idsByIsbn = new HashMap<>(); // isbn exato -> id (mesma String do IndexedBook)
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Começa no relógio para um ETag de antes de um restart não coincidir com a revisão nova
+    private long revision = System.currentTimeMillis();
+
+    public BookSearchIndex(BookRepository repository) {
+        this.repository = repository;
+    }
+
+    // Carrega todos os livros do banco em lotes por id (sem count e sem offset)
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            books.clear();
+            postings.clear();
+            idsByIsbn.clear();
+            long lastId = 0;
+            List<Book> batch;
+            do {
+                batch = repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, REBUILD_BATCH));
+                for (Book book : batch) {
+                    doAdd(book);
+                    lastId = book.getId();
+                }
+            } while (batch.size() == REBUILD_BATCH);
+            revision++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Usado tanto para livros novos quanto atualizados
+    public void add(Book book) {
+        lock.writeLock().lock();
+        try {
+            doRemove(key(book.getId()));
+            doAdd(book);
+            revision++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Lote inteiro com um único lock de escrita (importação em massa)
+    public void addAll(Collection<Book> books) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                doRemove(key(book.getId()));
+                doAdd(book);
+            }
+            revision++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            if (isKey(id)) {
+                doRemove(key(id));
+            }
+            revision++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Busca exata por isbn, sem ir ao banco (null se não houver livro com esse isbn)
+    public Long idOf(String isbn) {
+        lock.readLock().lock();
+        try {
+            Integer id = isbn == null ? null : idsByIsbn.get(isbn);
+            return id == null ? null : id.longValue();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // isbn do livro (null se o livro não existir)
+    public String isbnOf(Long id) {
+        lock.readLock().lock();
+        try {
+            IndexedBook indexed = find(id);
+            return indexed == null ? null : indexed.isbn;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Versão do livro (null se o livro não existir)
+    public Long versionOf(Long id) {
+        lock.readLock().lock();
+        try {
+            IndexedBook indexed = find(id);
+            return indexed == null ? null : indexed.version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Revisão do catálogo: qualquer livro criado, alterado ou removido (ou um rebuild) gera um valor novo
+    public long revision() {
+        lock.readLock().lock();
+        try {
+            return revision;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // O índice só responde quando há filtro de texto e a ordenação é por campos que ele conhece
+    public boolean supports(Book filter, Pageable pageable) {
+        if (isEmpty(filter.getTitle()) && isEmpty(filter.getAuthor()) && isEmpty(filter.getIsbn())) {
+            return false;
+        }
+        for (Sort.Order order : pageable.getSort()) {
+            if (!IndexedBook.SORTABLE.contains(order.getProperty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Mesma semântica do Example (campos não nulos, contains, ignore case); retorna a página de ids
+    public Page<Long> search(Book filter, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            List<IndexedBook> matches = match(filter);
+            if (pageable.getSort().isSorted()) {
+                matches.sort(comparator(pageable.getSort()));
+            }
+            int from = (int) Math.min(pageable.getOffset(), matches.size());
+            int to = Math.min(from + pageable.getPageSize(), matches.size());
+            List<Long> ids = new ArrayList<>(to - from);
+            for (IndexedBook book : matches.subList(from, to)) {
+                ids.add((long) book.id);
+            }
+            return new PageImpl<>(ids, pageable, matches.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Paginação por cursor: ids dos até 'limit' livros depois da posição do cursor (ordem do campo + id)
+    public List<Long> searchAfter(Book filter, Keyset keyset, int limit) {
+        lock.readLock().lock();
+        try {
+            Comparator<IndexedBook> comparator = comparator(keyset);
+            List<IndexedBook> matches = match(filter);
+            if (!keyset.isFirst()) {
+                IndexedBook last = IndexedBook.position(keyset);
+                matches.removeIf(book -> comparator.compare(book, last) <= 0);
+            }
+            matches.sort(comparator);
+            List<Long> ids = new ArrayList<>(Math.min(limit, matches.size()));
+            for (IndexedBook book : matches.subList(0, Math.min(limit, matches.size()))) {
+                ids.add((long) book.id);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<IndexedBook> match(Book filter) {
+        String[] terms = { filter.getTitle(), filter.getAuthor(), filter.getIsbn() };
+        if (filter.getId() != null && !isKey(filter.getId())) {
+            return new ArrayList<>(); // id fora da faixa do índice: não existe livro com ele
+        }
+        Integer id = filter.getId() == null ? null : key(filter.getId());
+
+        // Junta as listas de todos os trigramas de todos os termos e começa pela menor
+        List<PostingList> lists = new ArrayList<>();
+        for (int field = 0; field < terms.length; field++) {
+            String term = terms[field];
+            if (isEmpty(term) || term.length() < GRAM) {
+                continue;
+            }
+            for (String gram : grams(field, term)) {
+                PostingList list = postings.get(gram);
+                if (list == null) {
+                    return new ArrayList<>();
+                }
+                lists.add(list);
+            }
+        }
+
+        List<IndexedBook> result = new ArrayList<>();
+        if (lists.isEmpty()) {
+            // Só termos curtos: varre os livros em memória, na ordem de id
+            int[] ids = books.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            for (int candidate : ids) {
+                collect(candidate, id, terms, result);
+            }
+            return result;
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList smallest = lists.get(0);
+        for (int i = 0; i < smallest.size; i++) {
+            int candidate = smallest.ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.size() && inAll; j++) {
+                inAll = lists.get(j).contains(candidate);
+            }
+            if (inAll) {
+                collect(candidate, id, terms, result);
+            }
+        }
+        return result;
+    }
+
+    private void collect(int candidate, Integer id, String[] terms, List<IndexedBook> result) {
+        IndexedBook book = books.get(candidate);
+        if (book != null && (id == null || id == book.id) && book.matches(terms)) {
+            result.add(book);
+        }
+    }
+
+    private void doAdd(Book book) {
+        IndexedBook indexed = new IndexedBook(key(book.getId()), book.getTitle(), book.getAuthor(), book.getIsbn(),
+                book.getVersion());
+        books.put(indexed.id, indexed);
+        if (indexed.isbn != null) {
+            idsByIsbn.put(indexed.isbn, indexed.id);
+        }
+        String[] fields = indexed.fields();
+        for (int field = 0; field < fields.length; field++) {
+            for (String gram : grams(field, fields[field])) {
+                postings.computeIfAbsent(gram, g -> new PostingList()).add(indexed.id);
+            }
+        }
+    }
+
+    private void doRemove(int id) {
+        IndexedBook indexed = books.remove(id);
+        if (indexed == null) {
+            return;
+        }
+        if (indexed.isbn != null) {
+            idsByIsbn.remove(indexed.isbn, indexed.id);
+        }
+        String[] fields = indexed.fields();
+        for (int field = 0; field < fields.length; field++) {
+            for (String gram : grams(field, fields[field])) {
+                PostingList list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    // Trigramas em minúsculo, prefixados pelo campo: "0:ave", "0:ven", ...
+    private static List<String> grams(int field, String value) {
+        if (value == null || value.length() < GRAM) {
+            return Collections.emptyList();
+        }
+        String lower = value.toLowerCase();
+        List<String> grams = new ArrayList<>(lower.length() - GRAM + 1);
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            grams.add(field + ":" + lower.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static Comparator<IndexedBook> comparator(Sort sort) {
+        Comparator<IndexedBook> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<IndexedBook> next = Comparator.comparing(
+                    (IndexedBook book) -> book.property(order.getProperty()),
+                    Comparator.nullsFirst(Comparator.<Comparable>naturalOrder()));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        // Desempate pelo id para a ordem ser estável entre páginas
+        Comparator<IndexedBook> byId = Comparator.comparingInt(book -> book.id);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    // No cursor o desempate pelo id segue a direção do campo (é o mesmo 'order by' da consulta no banco)
+    private static Comparator<IndexedBook> comparator(Keyset keyset) {
+        Comparator<IndexedBook> comparator = Comparator.comparingInt(book -> book.id);
+        if (!keyset.getProperty().equals("id")) {
+            comparator = Comparator.comparing(
+                    (IndexedBook book) -> book.property(keyset.getProperty()),
+                    Comparator.nullsFirst(Comparator.<Comparable>naturalOrder())).thenComparing(comparator);
+        }
+        return keyset.getDirection() == Sort.Direction.DESC ? comparator.reversed() : comparator;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static int key(Long id) {
+        return Math.toIntExact(id);
+    }
+
+    // Os livros são indexados por int: um id fora dessa faixa (vindo do cliente, ex: GET /api/books/3000000000)
+    // não tem livro no índice, e não deve virar ArithmeticException
+    private static boolean isKey(Long id) {
+        return id != null && id >= Integer.MIN_VALUE && id <= Integer.MAX_VALUE;
+    }
+
+    private IndexedBook find(Long id) {
+        return isKey(id) ? books.get(key(id)) : null;
+    }
+
+    // Versão enxuta do livro guardada no índice (só o necessário para filtrar e ordenar)
+    private static final class IndexedBook {
+
+        static final List<String> SORTABLE = Arrays.asList("id", "title", "author", "isbn");
+
+        final int id;
+        final String title;
+        final String author;
+        final String isbn;
+        final long version;
+
+        IndexedBook(int id, String title, String author, String isbn, long version) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.isbn = isbn;
+            this.version = version;
+        }
+
+        // Livro "fantasma" na posição do cursor, só para comparar
+        static IndexedBook position(Keyset keyset) {
+            String value = keyset.typedValue(String.class);
+            return new IndexedBook(key(keyset.getId()),
+                    "title".equals(keyset.getProperty()) ? value : null,
+                    "author".equals(keyset.getProperty()) ? value : null,
+                    "isbn".equals(keyset.getProperty()) ? value : null, 0);
+        }
+
+        String[] fields() {
+            return new String[]{ title, author, isbn };
+        }
+
+        boolean matches(String[] terms) {
+            String[] fields = fields();
+            for (int i = 0; i < terms.length; i++) {
+                if (!isEmpty(terms[i]) && !containsIgnoreCase(fields[i], terms[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Comparable property(String name) {
+            switch (name) {
+                case "title": return title;
+                case "author": return author;
+                case "isbn": return isbn;
+                default: return id;
+            }
+        }
+
+        private static boolean containsIgnoreCase(String value, String term) {
+            if (value == null) {
+                return false;
+            }
+            for (int i = 0; i + term.length() <= value.length(); i++) {
+                if (value.regionMatches(true, i, term, 0, term.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Lista ordenada de ids em um int[] (bem mais compacta que um Set<Long>)
+    private static final class PostingList {
+
+        int[] ids = new int[4];
+        int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(int id) {
+            // Caso comum: ids novos são sempre maiores, então é só adicionar no fim
+            if (size > 0 && ids[size - 1] >= id) {
+                int index = Arrays.binarySearch(ids, 0, size, id);
+                if (index >= 0) {
+                    return;
+                }
+                insert(-index - 1, id);
+                return;
+            }
+            insert(size, id);
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        private void insert(int index, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+    }
+}
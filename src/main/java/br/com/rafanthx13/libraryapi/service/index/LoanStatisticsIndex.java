@@ -0,0 +1,293 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/*
+Estatísticas de empréstimos em memória, atualizadas a cada empréstimo/devolução (sem varrer a tabela de empréstimos na leitura):
++ total de empréstimos por livro: um int por id de livro (como o bitmap do BookAvailabilityIndex)
++ empréstimos ativos por customer, e o customer de cada empréstimo em aberto (a devolução chega só com o id)
++ os 'top' livros mais emprestados: o total de um livro só cresce, então basta subir o livro que mudou na lista
+É mantido pelo LoanServiceImpl depois do commit. O rebuild (ao subir e pelo cron de library.statistics.reconcile.cron)
+recalcula tudo com agregações no banco e corrige o que mudou por fora da aplicação:
++ as contas novas são montadas fora do lock (empréstimos e devoluções não esperam as agregações) e trocadas de uma vez
++ as agregações vão só até o maior id de empréstimo lido no início (a marca d'água). O que chega durante o rebuild
+  fica anotado e é reaplicado nas contas novas na troca: empréstimo novo só se o id passar da marca (senão o banco
+  já contou), devolução/atualização sempre (não contam duas vezes, ver Counts.close/update)
+  Resta um caso: um empréstimo com id abaixo da marca que ainda não tinha commit na leitura (o id sai da sequence
+  antes do insert) não é contado até o próximo rebuild
+*/
+@Component
+public class LoanStatisticsIndex {
+
+    private static final int REBUILD_BATCH = 10_000;
+
+    private final LoanRepository repository;
+    private final int topSize;
+
+    private Counts counts;
+    private List<Delta> pending; // != null enquanto um rebuild lê o banco
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public LoanStatisticsIndex(LoanRepository repository, @Value("${library.statistics.top:10}") int topSize) {
+        this.repository = repository;
+        this.topSize = topSize;
+        this.counts = new Counts(topSize);
+    }
+
+    @PostConstruct
+    @Scheduled(cron = "${library.statistics.reconcile.cron:0 30 * * * *}")
+    public synchronized void rebuild() {
+        List<Delta> journal = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            pending = journal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Counts fresh = new Counts(topSize);
+        long watermark;
+        try {
+            Long maxId = repository.findMaxId();
+            watermark = maxId == null ? 0 : maxId;
+            load(fresh, watermark);
+        } catch (RuntimeException e) {
+            stopJournal();
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Delta delta : journal) {
+                if (delta.createdId == null || delta.createdId > watermark) {
+                    delta.change.accept(fresh);
+                }
+            }
+            counts = fresh;
+            pending = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load(Counts fresh, long watermark) {
+        for (Object[] row : repository.countLoansByBook(watermark)) {
+            int book = key((Long) row[0]);
+            int loans = ((Long) row[1]).intValue();
+            fresh.grow(book);
+            fresh.loansByBook[book] = loans;
+            fresh.totalLoans += loans;
+        }
+        for (int book = 0; book < fresh.loansByBook.length; book++) {
+            if (fresh.loansByBook[book] > 0) {
+                fresh.offerTop(book);
+            }
+        }
+        long lastId = 0;
+        List<Object[]> batch;
+        do {
+            batch = repository.findOpenCustomersAfter(lastId, watermark, PageRequest.of(0, REBUILD_BATCH));
+            for (Object[] row : batch) {
+                lastId = (Long) row[0];
+                fresh.open(lastId, (String) row[1]);
+            }
+        } while (batch.size() == REBUILD_BATCH);
+    }
+
+    private void stopJournal() {
+        lock.writeLock().lock();
+        try {
+            pending = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Empréstimo novo: conta para o livro e, em aberto, para o customer
+    public void created(Loan loan) {
+        apply(loan.getId(), current -> current.created(loan));
+    }
+
+    // Empréstimo já existente salvo de novo: só a passagem entre em aberto e devolvido muda as contas
+    public void update(Loan loan) {
+        apply(null, current -> current.update(loan));
+    }
+
+    public void close(Long loanId) {
+        apply(null, current -> current.close(loanId));
+    }
+
+    private void apply(Long createdId, Consumer<Counts> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(counts);
+            if (pending != null) {
+                pending.add(new Delta(createdId, change));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int loansOf(Long bookId) {
+        lock.readLock().lock();
+        try {
+            int book = key(bookId);
+            return book < counts.loansByBook.length ? counts.loansByBook[book] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int activeLoansOf(String customer) {
+        lock.readLock().lock();
+        try {
+            return counts.activeByCustomer.getOrDefault(customer, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Totais e os 'limit' livros mais emprestados (no máximo library.statistics.top), lidos juntos
+    public Summary summary(int limit) {
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> mostBorrowed = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(limit, counts.topCount); i++) {
+                mostBorrowed.put((long) counts.top[i], counts.loansByBook[counts.top[i]]);
+            }
+            return new Summary(counts.totalLoans, counts.openLoanCustomers.size(), mostBorrowed);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    private static int key(Long id) {
+        return Math.toIntExact(id);
+    }
+
+    // Mudança que chegou durante o rebuild; createdId só para empréstimo novo (é o que a marca d'água decide)
+    @AllArgsConstructor
+    private static final class Delta {
+        private final Long createdId;
+        private final Consumer<Counts> change;
+    }
+
+    // As contas em si: a instância em uso só muda com o lock de escrita, a do rebuild é montada sem lock e trocada
+    private static final class Counts {
+
+        private int[] loansByBook = new int[0];
+        private long totalLoans;
+        private final Map<Long, String> openLoanCustomers = new HashMap<>(); // empréstimo em aberto -> customer
+        private final Map<String, Integer> activeByCustomer = new HashMap<>();
+        private final int[] top; // ids dos livros mais emprestados, do maior total para o menor
+        private int topCount;
+
+        Counts(int topSize) {
+            this.top = new int[topSize];
+        }
+
+        void created(Loan loan) {
+            totalLoans++;
+            if (loan.getBook() != null) {
+                int book = key(loan.getBook().getId());
+                grow(book);
+                loansByBook[book]++;
+                offerTop(book);
+            }
+            if (!Boolean.TRUE.equals(loan.getReturned())) {
+                open(loan.getId(), loan.getCustomer());
+            }
+        }
+
+        void update(Loan loan) {
+            if (Boolean.TRUE.equals(loan.getReturned())) {
+                close(loan.getId());
+            } else if (!openLoanCustomers.containsKey(loan.getId())) {
+                open(loan.getId(), loan.getCustomer());
+            }
+        }
+
+        void open(Long loanId, String customer) {
+            openLoanCustomers.put(loanId, customer);
+            activeByCustomer.merge(customer, 1, Integer::sum);
+        }
+
+        void close(Long loanId) {
+            if (!openLoanCustomers.containsKey(loanId)) {
+                return;
+            }
+            String customer = openLoanCustomers.remove(loanId);
+            activeByCustomer.computeIfPresent(customer, (key, active) -> active > 1 ? active - 1 : null);
+        }
+
+        // O livro entra na lista se passar o último e sobe até a posição do seu total (empate: menor id primeiro)
+        void offerTop(int book) {
+            int position = -1;
+            for (int i = 0; i < topCount; i++) {
+                if (top[i] == book) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                if (topCount < top.length) {
+                    position = topCount++;
+                } else if (top.length > 0 && ranksAbove(book, top[top.length - 1])) {
+                    position = top.length - 1;
+                } else {
+                    return;
+                }
+                top[position] = book;
+            }
+            while (position > 0 && ranksAbove(top[position], top[position - 1])) {
+                int above = top[position - 1];
+                top[position - 1] = top[position];
+                top[position] = above;
+                position--;
+            }
+        }
+
+        private boolean ranksAbove(int book, int other) {
+            return loansByBook[book] > loansByBook[other] || (loansByBook[book] == loansByBook[other] && book < other);
+        }
+
+        void grow(int book) {
+            if (book >= loansByBook.length) {
+                loansByBook = Arrays.copyOf(loansByBook, Math.max(book + 1, loansByBook.length * 2));
+            }
+        }
+    }
+
+    // Fotografia das contas gerais: mostBorrowed é id do livro -> total de empréstimos, do mais emprestado para o menos
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    public static final class Summary {
+        private final long totalLoans;
+        private final long activeLoans;
+        private final Map<Long, Integer> mostBorrowed;
+    }
+}
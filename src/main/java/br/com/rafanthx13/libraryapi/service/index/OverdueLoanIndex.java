@@ -0,0 +1,140 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Empréstimos em aberto agrupados por dia (um "balde" por loanDate, em ordem), em memória.
++ Substitui o scan de todos os empréstimos não devolvidos feito a cada consulta de atrasados
++ "Quem está atrasado" = os baldes até a data de corte: custo proporcional ao resultado (mais um passo por dia)
++ Dentro do balde os ids ficam ordenados, então a paginação é estável
+É mantido pelo LoanServiceImpl no save/update e reconstruído a partir do banco ao subir a aplicação.
+*/
+@Component
+public class OverdueLoanIndex {
+
+    private static final int REBUILD_BATCH = 10_000;
+
+    private final LoanRepository repository;
+
+    private final NavigableMap<LocalDate, NavigableSet<Long>> buckets = new TreeMap<>();
+    private final Map<Long, LocalDate> openLoans = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public OverdueLoanIndex(LoanRepository repository) {
+        this.repository = repository;
+    }
+
+    // Carrega os empréstimos em aberto em lotes por id (sem count e sem offset)
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            openLoans.clear();
+            long lastId = 0;
+            List<Object[]> batch;
+            do {
+                batch = repository.findOpenAfter(lastId, PageRequest.of(0, REBUILD_BATCH));
+                for (Object[] row : batch) {
+                    lastId = (Long) row[0];
+                    doOpen(lastId, (LocalDate) row[1]);
+                }
+            } while (batch.size() == REBUILD_BATCH);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Chamado depois de salvar: empréstimo em aberto entra (ou troca de balde), devolvido sai
+    public void update(Loan loan) {
+        lock.writeLock().lock();
+        try {
+            doClose(loan.getId());
+            if (!Boolean.TRUE.equals(loan.getReturned()) && loan.getLoanDate() != null) {
+                doOpen(loan.getId(), loan.getLoanDate());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close(Long loanId) {
+        lock.writeLock().lock();
+        try {
+            doClose(loanId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Página dos ids em aberto com loanDate <= cutoff, na ordem (loanDate, id)
+    public Page<Long> openedOnOrBefore(LocalDate cutoff, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<LocalDate, NavigableSet<Long>> late = buckets.headMap(cutoff, true);
+            long total = 0;
+            for (NavigableSet<Long> bucket : late.values()) {
+                total += bucket.size();
+            }
+            List<Long> ids = new ArrayList<>(pageable.getPageSize());
+            long skip = pageable.getOffset();
+            for (NavigableSet<Long> bucket : late.values()) {
+                if (ids.size() == pageable.getPageSize()) {
+                    break;
+                }
+                if (skip >= bucket.size()) {
+                    skip -= bucket.size(); // pula o balde inteiro sem percorrer
+                    continue;
+                }
+                Iterator<Long> it = bucket.iterator();
+                for (; skip > 0; skip--) {
+                    it.next();
+                }
+                while (it.hasNext() && ids.size() < pageable.getPageSize()) {
+                    ids.add(it.next());
+                }
+            }
+            return new PageImpl<>(ids, pageable, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void doOpen(Long id, LocalDate loanDate) {
+        openLoans.put(id, loanDate);
+        buckets.computeIfAbsent(loanDate, date -> new TreeSet<>()).add(id);
+    }
+
+    private void doClose(Long id) {
+        LocalDate loanDate = openLoans.remove(id);
+        if (loanDate == null) {
+            return;
+        }
+        NavigableSet<Long> bucket = buckets.get(loanDate);
+        bucket.remove(id);
+        if (bucket.isEmpty()) {
+            buckets.remove(loanDate);
+        }
+    }
+}
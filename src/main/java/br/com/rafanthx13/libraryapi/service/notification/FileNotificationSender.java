@@ -0,0 +1,51 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Sender local: cada mensagem vira um bloco no arquivo 'library.notification.file' (útil para conferir o que seria enviado)
+@Component
+@ConditionalOnProperty(name = "library.notification.sender", havingValue = "file")
+public class FileNotificationSender implements NotificationSender {
+
+    private final BufferedWriter writer;
+
+    public FileNotificationSender(@Value("${library.notification.file:notifications.log}") String file) throws IOException {
+        this.writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void send(Notification notification) {
+        try {
+            synchronized (writer) {
+                writer.write("To: " + notification.getTo());
+                writer.newLine();
+                writer.write("Subject: " + notification.getSubject());
+                writer.newLine();
+                writer.newLine();
+                writer.write(notification.getBody());
+                writer.newLine();
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,46 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sender padrão: guarda só as últimas mensagens (para consulta/testes) e o total enviado, sem crescer o heap
+@Component
+@ConditionalOnProperty(name = "library.notification.sender", havingValue = "memory", matchIfMissing = true)
+public class InMemoryNotificationSender implements NotificationSender {
+
+    private final int capacity;
+    private final Deque<Notification> last = new ArrayDeque<>();
+    private final AtomicLong sent = new AtomicLong();
+
+    public InMemoryNotificationSender(@Value("${library.notification.memory.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void send(Notification notification) {
+        synchronized (last) {
+            if (last.size() == capacity) {
+                last.removeFirst();
+            }
+            last.addLast(notification);
+        }
+        sent.incrementAndGet();
+    }
+
+    public List<Notification> getLast() {
+        synchronized (last) {
+            return new ArrayList<>(last);
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+}
@@ -0,0 +1,45 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Resumo dos atrasos de um cliente: só o total e os primeiros títulos, nunca as entidades
+class LateLoanDigest {
+
+    static final int MAX_TITLES = 5;
+
+    private final String email;
+    private String customer;
+    private int count;
+    private final List<String> titles = new ArrayList<>(MAX_TITLES);
+
+    LateLoanDigest(String email) {
+        this.email = email;
+    }
+
+    void add(Loan loan) {
+        if (customer == null) {
+            customer = loan.getCustomer();
+        }
+        count++;
+        if (titles.size() < MAX_TITLES && loan.getBook() != null) {
+            titles.add(loan.getBook().getTitle() + " (emprestado em " + loan.getLoanDate() + ")");
+        }
+    }
+
+    Notification render() {
+        StringBuilder body = new StringBuilder()
+                .append("Olá ").append(customer).append(",\n\n")
+                .append("Atenção! Você tem ").append(count).append(count == 1 ? " empréstimo atrasado" : " empréstimos atrasados")
+                .append(". Favor devolver o(s) livro(s) o mais rápido possível.\n");
+        for (String title : titles) {
+            body.append("\n- ").append(title);
+        }
+        if (count > titles.size()) {
+            body.append("\n- ... e mais ").append(count - titles.size());
+        }
+        return new Notification(email, "Empréstimos atrasados (" + count + ")", body.toString());
+    }
+}
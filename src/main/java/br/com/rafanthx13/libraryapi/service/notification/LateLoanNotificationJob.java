@@ -0,0 +1,75 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Job agendado ('library.notification.cron') que avisa os clientes com empréstimos atrasados:
+1. Lê os atrasados em páginas (LoanService.getLateLoans, que vem do OverdueLoanIndex); cada página é descartada depois de lida
+2. Agrupa por email num LateLoanDigest (total + alguns títulos): o heap cresce com o número de clientes, não de empréstimos
+3. Renderiza uma mensagem por cliente e entrega ao NotificationDispatcher (paralelo e com back-pressure)
+Um empréstimo devolvido durante a leitura desloca as páginas seguintes; o que escapar entra na próxima execução
+*/
+@Slf4j
+@Component
+public class LateLoanNotificationJob {
+
+    static final int PAGE_SIZE = 1000;
+
+    private final LoanService loanService;
+    private final NotificationDispatcher dispatcher;
+    private final Counter lateLoans;
+    private final Counter withoutEmail;
+    private final Timer runTimer;
+
+    public LateLoanNotificationJob(LoanService loanService, NotificationDispatcher dispatcher, MeterRegistry registry) {
+        this.loanService = loanService;
+        this.dispatcher = dispatcher;
+        this.lateLoans = registry.counter("library.notifications.loans");
+        this.withoutEmail = registry.counter("library.notifications.loans.without.email");
+        this.runTimer = registry.timer("library.notifications.job");
+    }
+
+    @Scheduled(cron = "${library.notification.cron}")
+    public void notifyLateLoans() {
+        runTimer.record(this::run);
+    }
+
+    // Retorna quantas mensagens foram despachadas
+    public int run() {
+        Map<String, LateLoanDigest> byEmail = new HashMap<>();
+        Pageable pageable = PageRequest.of(0, PAGE_SIZE);
+        Page<Loan> page;
+        do {
+            page = loanService.getLateLoans(pageable);
+            for (Loan loan : page.getContent()) {
+                lateLoans.increment();
+                if (loan.getCustomerEmail() == null) {
+                    withoutEmail.increment(); // empréstimos antigos, criados antes do email ser gravado
+                    continue;
+                }
+                byEmail.computeIfAbsent(loan.getCustomerEmail(), LateLoanDigest::new).add(loan);
+            }
+            pageable = pageable.next();
+        } while (page.hasNext());
+
+        for (LateLoanDigest digest : byEmail.values()) {
+            dispatcher.dispatch(digest.render());
+        }
+        log.info("Late loan notifications dispatched: {}", byEmail.size());
+        return byEmail.size();
+    }
+}
@@ -0,0 +1,15 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Mensagem já renderizada, pronta para o NotificationSender: um destinatário, um assunto, um texto
+@Data
+@AllArgsConstructor
+public class Notification {
+
+    private String to;
+    private String subject;
+    private String body;
+
+}
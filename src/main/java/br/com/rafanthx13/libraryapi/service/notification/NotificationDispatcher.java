@@ -0,0 +1,51 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+
+/*
+Entrega as mensagens ao NotificationSender pelo 'notificationExecutor' (ver NotificationConfig):
++ Paralelismo limitado ao número de threads do executor
++ Back-pressure: com a fila cheia, quem chama 'dispatch' executa o envio (CallerRunsPolicy) e por isso para de produzir
++ Falha de um envio é contada e logada, não derruba o job
+Métricas no actuator: library.notifications.sent / failed (counters) e library.notifications.send (timer)
+*/
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+    private final NotificationSender sender;
+    private final Executor executor;
+    private final Counter sent;
+    private final Counter failed;
+    private final Timer sendTimer;
+
+    public NotificationDispatcher(NotificationSender sender, @Qualifier("notificationExecutor") Executor executor,
+                                  MeterRegistry registry) {
+        this.sender = sender;
+        this.executor = executor;
+        this.sent = registry.counter("library.notifications.sent");
+        this.failed = registry.counter("library.notifications.failed");
+        this.sendTimer = registry.timer("library.notifications.send");
+    }
+
+    public void dispatch(Notification notification) {
+        executor.execute(() -> send(notification));
+    }
+
+    private void send(Notification notification) {
+        try {
+            sendTimer.record(() -> sender.send(notification));
+            sent.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.error("Failed to send notification to {}", notification.getTo(), e);
+        }
+    }
+}
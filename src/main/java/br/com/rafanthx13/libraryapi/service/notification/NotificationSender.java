@@ -0,0 +1,11 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+/*
+Ponto de extensão do envio (SMTP, fila, arquivo...). A implementação é escolhida por 'library.notification.sender'.
+É chamado em paralelo pelas threads do NotificationDispatcher, então precisa ser thread-safe
+*/
+public interface NotificationSender {
+
+    void send(Notification notification);
+
+}
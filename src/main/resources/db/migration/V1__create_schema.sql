@@ -0,0 +1,37 @@
+-- Schema inicial (o mesmo que o Hibernate gerava) com os índices dos caminhos de consulta dos repositories
+
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    constraint pk_book primary key (id),
+    -- findByIsbn / existsByIsbn / findByIsbnIn / findExistingIsbns: o índice da unique já atende
+    constraint uk_book_isbn unique (isbn)
+);
+
+create table loan (
+    id bigint not null,
+    customer varchar(100),
+    customer_email varchar(255),
+    id_book bigint,
+    loan_date date,
+    returned boolean,
+    active_book_id bigint,
+    constraint pk_loan primary key (id),
+    -- no máximo um empréstimo ativo por livro; também é o índice de findActiveBookIds
+    constraint uk_loan_active_book_id unique (active_book_id),
+    -- o H2 cria um índice em id_book para a FK: findByBook / existsByBookAndNotReturned usam esse
+    -- (um (id_book, returned) não ajudaria: o 'returned is null or returned = false' não vira condição de índice)
+    constraint fk_loan_book foreign key (id_book) references book (id)
+);
+
+-- findByBookIsbnOrCustomer e o filtro de empréstimos por customer
+create index idx_loan_customer on loan (customer);
+
+-- empréstimos atrasados (loanDate <= x e não devolvido). Em PostgreSQL seria um índice parcial só dos não devolvidos
+-- (on loan (loan_date) where returned is not true); o H2 não tem índice parcial, então returned entra na chave
+create index idx_loan_loan_date_returned on loan (loan_date, returned);
@@ -0,0 +1,3 @@
+-- Versão do livro (@Version do Book): controle de concorrência otimista e ETag das respostas de livro.
+-- Os livros que já existem começam na versão 0
+alter table book add column version bigint default 0 not null;
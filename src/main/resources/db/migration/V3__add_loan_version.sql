@@ -0,0 +1,2 @@
+-- Versão do empréstimo (@Version do Loan): concorrência otimista e If-Match em PATCH /api/loans/{id}
+alter table loan add column version bigint default 0 not null;
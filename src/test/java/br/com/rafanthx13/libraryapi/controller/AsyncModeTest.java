@@ -0,0 +1,104 @@
+package br.com.rafanthx13.libraryapi.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Optional;
+
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapperImpl;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+import br.com.rafanthx13.libraryapi.service.BookService;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Mesmos endpoints do BooksControllerTest, agora com library.async.enabled=true (ver OffloadingHandlerAdapter)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest(controllers = BookController.class, properties = "library.async.enabled=true")
+@AutoConfigureMockMvc
+@Import(BookMapperImpl.class)
+public class AsyncModeTest {
+
+  static String BOOK_API = "/api/books";
+
+  @Autowired
+  MockMvc mvc;
+
+  @MockBean
+  BookService service;
+
+  @Test
+  @DisplayName("Deve executar o endpoint no executor de JPA e responder o mesmo JSON")
+  public void getBookAsyncTest() throws Exception {
+    Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+    BDDMockito.given( service.getById(1l) ).willReturn( Optional.of(book) );
+
+    MvcResult started = mvc.perform( MockMvcRequestBuilders.get(BOOK_API + "/1").accept(MediaType.APPLICATION_JSON) )
+        .andExpect( request().asyncStarted() )
+        .andReturn();
+
+    mvc.perform( asyncDispatch(started) )
+        .andExpect( status().isOk() )
+        .andExpect( jsonPath("id").value(1) )
+        .andExpect( jsonPath("title").value("As aventuras") );
+  }
+
+  @Test
+  @DisplayName("Deve manter o @ResponseStatus do endpoint no modo assíncrono")
+  public void createBookAsyncTest() throws Exception {
+    Book saved = Book.builder().id(10l).title("As aventuras").author("Artur").isbn("001").build();
+    BDDMockito.given( service.save(Mockito.any(Book.class)) ).willReturn( saved );
+    String json = new ObjectMapper().writeValueAsString( BookDTO.builder().title("As aventuras").author("Artur").isbn("001").build() );
+
+    MvcResult started = mvc.perform( MockMvcRequestBuilders.post(BOOK_API)
+            .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json) )
+        .andExpect( request().asyncStarted() )
+        .andReturn();
+
+    mvc.perform( asyncDispatch(started) )
+        .andExpect( status().isCreated() )
+        .andExpect( jsonPath("id").value(10) );
+  }
+
+  @Test
+  @DisplayName("Validação continua síncrona e erros do service passam pelo ControllerAdvice")
+  public void errorsAsyncTest() throws Exception {
+    // @Valid é resolvido antes de sair da thread do Tomcat: nem chega a ser assíncrono
+    mvc.perform( MockMvcRequestBuilders.post(BOOK_API)
+            .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content("{}") )
+        .andExpect( request().asyncNotStarted() )
+        .andExpect( status().isBadRequest() );
+
+    BDDMockito.given( service.save(Mockito.any(Book.class)) ).willThrow( new BusinessException("Isbn já cadastrado") );
+    String json = new ObjectMapper().writeValueAsString( BookDTO.builder().title("As aventuras").author("Artur").isbn("001").build() );
+
+    MvcResult started = mvc.perform( MockMvcRequestBuilders.post(BOOK_API)
+            .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json) )
+        .andExpect( request().asyncStarted() )
+        .andReturn();
+
+    mvc.perform( asyncDispatch(started) )
+        .andExpect( status().isBadRequest() )
+        .andExpect( jsonPath("errors[0]").value("Isbn já cadastrado") );
+  }
+}
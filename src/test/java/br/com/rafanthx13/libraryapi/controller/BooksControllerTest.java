@@ -11,26 +11,43 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookAvailabilityDTO;
 import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookImportResultDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapperImpl;
+import br.com.rafanthx13.libraryapi.data.repository.BookKeysetRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
 import br.com.rafanthx13.libraryapi.service.BookService;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 // @RunWith(SpringRunner.class) // JUnit 4
@@ -38,6 +55,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ActiveProfiles("test") // que tipo de contexto de test estamos faendo
 @WebMvcTest(controllers = BookController.class)
 @AutoConfigureMockMvc // configurar para fazer as requisições
+@Import(BookMapperImpl.class) // mapper gerado pelo MapStruct (o @WebMvcTest não carrega @Component)
 public class BooksControllerTest {
 
   static String BOOK_API = "/api/books";
@@ -137,6 +155,96 @@ public class BooksControllerTest {
 
 
 
+  @Test
+  @DisplayName("Deve responder o livro com a versão no ETag")
+  public void getBookETagTest() throws Exception{
+      Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").version(3).build();
+      BDDMockito.given( service.getById(1l) ).willReturn(Optional.of(book));
+
+      mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON) )
+          .andExpect( status().isOk() )
+          .andExpect( header().string(HttpHeaders.ETAG, "\"3\"") )
+          .andExpect( jsonPath("id").value(1l) );
+  }
+
+  @Test
+  @DisplayName("Deve responder 304 sem buscar o livro quando o If-None-Match é a versão atual")
+  public void getBookNotModifiedTest() throws Exception{
+      BDDMockito.given( service.getVersion(1l) ).willReturn(Optional.of(3l));
+
+      mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("/1"))
+                      .accept(MediaType.APPLICATION_JSON)
+                      .header(HttpHeaders.IF_NONE_MATCH, "\"2\", \"3\"") )
+          .andExpect( status().isNotModified() )
+          .andExpect( header().string(HttpHeaders.ETAG, "\"3\"") )
+          .andExpect( content().string("") );
+
+      Mockito.verify(service, Mockito.never()).getById(Mockito.anyLong());
+  }
+
+  @Test
+  @DisplayName("Deve responder 304 na listagem enquanto o catálogo não mudar")
+  public void findBooksNotModifiedTest() throws Exception{
+      BDDMockito.given( service.getCatalogueRevision() ).willReturn(10l);
+      BDDMockito.given( service.findProjected(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+              .willReturn( new PageImpl<BookDTO>(Arrays.asList(createNewBook()), PageRequest.of(0,100), 1) );
+      String url = BOOK_API.concat("?title=aventuras&page=0&size=100");
+
+      String etag = mvc.perform( MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON) )
+          .andExpect( status().isOk() )
+          .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+      mvc.perform( MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag) )
+          .andExpect( status().isNotModified() );
+      // Outra página é outra representação
+      mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&page=1&size=100"))
+                      .accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag) )
+          .andExpect( status().isOk() );
+      // Catálogo alterado: o ETag antigo não vale mais
+      BDDMockito.given( service.getCatalogueRevision() ).willReturn(11l);
+      mvc.perform( MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag) )
+          .andExpect( status().isOk() );
+
+      Mockito.verify(service, Mockito.times(3)).findProjected(Mockito.any(Book.class), Mockito.any(Pageable.class));
+  }
+
+  @Test
+  @DisplayName("Deve informar a disponibilidade de um livro")
+  public void availabilityTest() throws Exception {
+      BDDMockito.given( service.getAvailability(1l) ).willReturn( Optional.of(new BookAvailabilityDTO(1l, "123", false)) );
+      BDDMockito.given( service.getAvailability(2l) ).willReturn( Optional.empty() );
+
+      mvc
+          .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/availability")).accept(MediaType.APPLICATION_JSON))
+          .andExpect(status().isOk())
+          .andExpect( jsonPath("isbn").value("123") )
+          .andExpect( jsonPath("available").value(false) );
+
+      mvc
+          .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/2/availability")).accept(MediaType.APPLICATION_JSON))
+          .andExpect(status().isNotFound());
+  }
+
+  @Test
+  @DisplayName("Deve informar a disponibilidade de vários livros por isbn, na ordem pedida")
+  public void availabilityBatchTest() throws Exception {
+      BDDMockito.given( service.getAvailability(Arrays.asList("123", "000")) ).willReturn( Arrays.asList(
+              new BookAvailabilityDTO(1l, "123", true), new BookAvailabilityDTO(null, "000", false)) );
+
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+              .post(BOOK_API.concat("/availability"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .accept(MediaType.APPLICATION_JSON)
+              .content("[\"123\", \"000\"]");
+
+      mvc
+          .perform(request)
+          .andExpect(status().isOk())
+          .andExpect( jsonPath("$[0].available").value(true) )
+          .andExpect( jsonPath("$[1].id").doesNotExist() )
+          .andExpect( jsonPath("$[1].available").value(false) );
+  }
+
   @Test
   @DisplayName("Deve deletar um livro")
   public void deleteBookTest() throws Exception {
@@ -180,7 +288,7 @@ public class BooksControllerTest {
 
       // O livro depois de atualizar
       Book updatedBook = Book.builder().id(id).author("Artur").title("As aventuras").isbn("321").build();
-      BDDMockito.given( service.update(updatingBook) )
+      BDDMockito.given( service.update(Mockito.any(Book.class)) )
                 .willReturn(updatedBook);
 
       // request : put in /api/books/{id} com BODY
@@ -197,6 +305,56 @@ public class BooksControllerTest {
                 .andExpect( jsonPath("title").value(createNewBook().getTitle()) )
                 .andExpect( jsonPath("author").value(createNewBook().getAuthor()) )
                 .andExpect( jsonPath("isbn").value("321") );
+
+      // O livro que veio do service (cache) não é alterado: o update recebe uma cópia
+      assertThat(updatingBook.getTitle()).isEqualTo("some title");
+      assertThat(updatingBook.getAuthor()).isEqualTo("some author");
+      Mockito.verify(service).update( Book.builder().id(1l).title("As aventuras").author("Artur").isbn("321").build() );
+  }
+
+  @Test
+  @DisplayName("Deve retornar 412 sem atualizar quando o If-Match não é a versão atual do livro")
+  public void updateBookPreconditionFailedTest() throws Exception {
+      Book book = Book.builder().id(1l).title("some title").author("some author").isbn("321").version(2).build();
+      BDDMockito.given( service.getById(1l) ).willReturn( Optional.of(book) );
+
+      mvc.perform( MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+                      .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .header(HttpHeaders.IF_MATCH, "\"1\"") )
+                .andExpect( status().isPreconditionFailed() );
+
+      Mockito.verify(service, Mockito.never()).update(Mockito.any(Book.class));
+  }
+
+  @Test
+  @DisplayName("Deve atualizar com o If-Match da versão atual e devolver o ETag da versão nova")
+  public void updateBookIfMatchTest() throws Exception {
+      Book book = Book.builder().id(1l).title("some title").author("some author").isbn("321").version(2).build();
+      BDDMockito.given( service.getById(1l) ).willReturn( Optional.of(book) );
+      BDDMockito.given( service.update(Mockito.any(Book.class)) )
+                .willReturn( Book.builder().id(1l).title("As aventuras").author("Artur").isbn("321").version(3).build() );
+
+      mvc.perform( MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+                      .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .header(HttpHeaders.IF_MATCH, "\"2\"") )
+                .andExpect( status().isOk() )
+                .andExpect( header().string(HttpHeaders.ETAG, "\"3\"") );
+  }
+
+  @Test
+  @DisplayName("Deve retornar 409 quando outra escrita muda o livro antes do update")
+  public void updateBookConflictTest() throws Exception {
+      Book book = Book.builder().id(1l).title("some title").author("some author").isbn("321").build();
+      BDDMockito.given( service.getById(1l) ).willReturn( Optional.of(book) );
+      BDDMockito.given( service.update(Mockito.any(Book.class)) ).willThrow( new ObjectOptimisticLockingFailureException(Book.class, 1l) );
+
+      mvc.perform( MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+                      .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                      .contentType(MediaType.APPLICATION_JSON) )
+                .andExpect( status().isConflict() )
+                .andExpect( jsonPath("errors", Matchers.hasSize(1)) );
   }
 
   @Test
@@ -237,8 +395,10 @@ public class BooksControllerTest {
       // Nao importa o que agente vai mandar, pois está mockado
       // O retorno também será paginado PageImpl já é do spring
       // PageRequest são as informações da pagianiçao: page:0, 100 elemetnos, total de parametros para busca: 1
-      BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
-              .willReturn( new PageImpl<Book>( Arrays.asList(book), PageRequest.of(0,100), 1 )   );
+      // O service já devolve a página projetada em BookDTO
+      BDDMockito.given( service.findProjected(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+              .willReturn( new PageImpl<BookDTO>( Arrays.asList(new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn())),
+                      PageRequest.of(0,100), 1 )   );
 
       String queryString = String.format("?title=%s&author=%s&page=0&size=100",
               book.getTitle(), book.getAuthor());
@@ -261,6 +421,99 @@ public class BooksControllerTest {
 
 
 
+  @Test
+  @DisplayName("Deve importar livros em NDJSON e devolver os erros por linha")
+  public void importBooksTest() throws Exception {
+      // Mock: o service consome o iterator e conta quantos livros válidos chegaram
+      BDDMockito.given( service.importBooks(Mockito.any()) ).willAnswer( invocation -> {
+          Iterator<Book> books = invocation.getArgument(0);
+          BookImportResultDTO result = new BookImportResultDTO();
+          books.forEachRemaining( book -> result.imported(1) );
+          return result;
+      });
+
+      String ndjson = "{\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"}\n"
+                    + "{\"title\":\"B\",\"author\":\"Artur\"}\n"
+                    + "{\"title\":\"C\",\"author\":\"Artur\",\"isbn\":\"003\"}\n";
+
+      MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+          .post(BOOK_API.concat("/import"))
+          .contentType(NdjsonResponse.MEDIA_TYPE)
+          .accept(MediaType.APPLICATION_JSON)
+          .content(ndjson);
+
+      mvc.perform(request)
+          .andExpect( status().isCreated() )
+          .andExpect( jsonPath("imported").value(2) )
+          .andExpect( jsonPath("rejected").value(1) )
+          .andExpect( jsonPath("errors[0]").value(Matchers.startsWith("linha 2: isbn")) );
+  }
+
+  @Test
+  @DisplayName("Deve importar um array JSON e parar no primeiro JSON inválido")
+  public void importBooksBrokenJsonTest() throws Exception {
+      BDDMockito.given( service.importBooks(Mockito.any()) ).willAnswer( invocation -> {
+          Iterator<Book> books = invocation.getArgument(0);
+          BookImportResultDTO result = new BookImportResultDTO();
+          books.forEachRemaining( book -> result.imported(1) );
+          return result;
+      });
+
+      String json = "[{\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"}, {\"title\": ";
+
+      mvc.perform(MockMvcRequestBuilders
+              .post(BOOK_API.concat("/import"))
+              .contentType(MediaType.APPLICATION_JSON)
+              .content(json))
+          .andExpect( status().isCreated() )
+          .andExpect( jsonPath("imported").value(1) )
+          .andExpect( jsonPath("errors[0]").value(Matchers.startsWith("linha 2: JSON inválido")) );
+  }
+
+  @Test
+  @DisplayName("Deve exportar o catálogo em NDJSON")
+  public void exportBooksTest() throws Exception {
+      Mockito.doAnswer( invocation -> {
+          Consumer<BookDTO> sink = invocation.getArgument(0);
+          sink.accept( BookDTO.builder().id(1l).title("A").author("Artur").isbn("001").build() );
+          return null;
+      }).when(service).exportBooks(Mockito.any());
+
+      MvcResult started = mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("/export")) )
+          .andExpect( request().asyncStarted() )
+          .andReturn();
+
+      mvc.perform( asyncDispatch(started) )
+          .andExpect( status().isOk() )
+          .andExpect( content().string("{\"id\":1,\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"}\n") );
+  }
+
+  @Test
+  @DisplayName("Deve listar livros por cursor devolvendo o token da próxima página, sem count")
+  public void findBooksByCursorTest() throws Exception {
+      // Pede size + 1: a linha extra indica que há próxima página
+      BDDMockito.given( service.findAfter(Mockito.any(Book.class), Mockito.any(Keyset.class), Mockito.eq(2)) )
+          .willReturn( Arrays.asList(
+              Book.builder().id(1l).title("A").author("Artur").isbn("001").build(),
+              Book.builder().id(2l).title("B").author("Artur").isbn("002").build()) );
+
+      mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("?author=Artur&cursor=&size=1&sort=title")) )
+          .andExpect( status().isOk() )
+          .andExpect( jsonPath("content", Matchers.hasSize(1)) )
+          .andExpect( jsonPath("content[0].id").value(1) )
+          .andExpect( jsonPath("next").value(Keyset.of("", Sort.by("title"), BookKeysetRepository.SORTABLE)
+                  .after(Book.builder().id(1l).title("A").build()).encode()) )
+          .andExpect( jsonPath("totalElements").doesNotExist() );
+  }
+
+  @Test
+  @DisplayName("Deve retornar 400 para um cursor inválido")
+  public void findBooksByInvalidCursorTest() throws Exception {
+      mvc.perform( MockMvcRequestBuilders.get(BOOK_API.concat("?cursor=lixo")) )
+          .andExpect( status().isBadRequest() )
+          .andExpect( jsonPath("errors[0]").value("Invalid cursor.") );
+  }
+
   private BookDTO createNewBook() {
     return BookDTO.builder().author("Artur").title("As aventuras").isbn("001").build();
   }
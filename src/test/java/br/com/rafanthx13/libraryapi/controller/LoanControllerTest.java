@@ -1,11 +1,17 @@
 package br.com.rafanthx13.libraryapi.controller;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookLoanCountDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
 import br.com.rafanthx13.libraryapi.data.dto.ReturnedLoanDTO;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.mapper.BookMapperImpl;
+import br.com.rafanthx13.libraryapi.data.mapper.LoanMapperImpl;
 import br.com.rafanthx13.libraryapi.service.BookService;
 import br.com.rafanthx13.libraryapi.service.LoanService;
 import br.com.rafanthx13.libraryapi.service.LoanServiceTest;
@@ -22,21 +28,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static br.com.rafanthx13.libraryapi.controller.BooksControllerTest.BOOK_API;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*; // status()
 
@@ -44,6 +57,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ActiveProfiles("test")
 @AutoConfigureMockMvc
 @WebMvcTest(controllers = LoanController.class) // Usar somente esse controller
+@Import({LoanMapperImpl.class, BookMapperImpl.class})
 public class LoanControllerTest {
 
 	static final String LOAN_API = "/api/loans";
@@ -85,6 +99,142 @@ public class LoanControllerTest {
         		// PERCEBA, NÂO É UM JSON, É SÓ UM VALOR RETORNADO
             ;
 
+        // O email do DTO precisa chegar na entidade (é para ele que vai o aviso de atraso)
+        Mockito.verify(loanService).save( Mockito.argThat(saved -> "customer@email.com".equals(saved.getCustomerEmail())) );
+    }
+
+    @Test
+    @DisplayName("Deve emprestar em lote e responder o resultado de cada item")
+    public void createBatchTest() throws Exception {
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(
+                LoanDTO.builder().isbn("001").customer("Fulano").email("fulano@email.com").build(),
+                LoanDTO.builder().isbn("002").customer("Ciclano").email("ciclano@email.com").build()));
+        BDDMockito.given( loanService.checkout(Mockito.anyList()) ).willReturn( Arrays.asList(
+                new LoanItemResultDTO(1l, "001", "Fulano", LoanItemResultDTO.Status.CREATED),
+                new LoanItemResultDTO(null, "002", "Ciclano", LoanItemResultDTO.Status.ALREADY_LOANED)) );
+
+        mvc.perform( MockMvcRequestBuilders.post(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json) )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("$", Matchers.hasSize(2)) )
+                .andExpect( jsonPath("$[0].id").value(1) )
+                .andExpect( jsonPath("$[0].status").value("CREATED") )
+                .andExpect( jsonPath("$[1].id").doesNotExist() )
+                .andExpect( jsonPath("$[1].status").value("ALREADY_LOANED") );
+    }
+
+    @Test
+    @DisplayName("Item nulo ou sem isbn deve voltar INVALID no próprio item, sem derrubar o lote")
+    public void createBatchInvalidItemTest() throws Exception {
+        // sem email também vale, como no POST simples
+        LoanDTO valid = LoanDTO.builder().isbn("001").customer("Fulano").build();
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(
+                null, LoanDTO.builder().customer("Ciclano").email("ciclano@email.com").build(), valid));
+        BDDMockito.given( loanService.checkout(Mockito.anyList()) ).willReturn( Arrays.asList(
+                new LoanItemResultDTO(1l, "001", "Fulano", LoanItemResultDTO.Status.CREATED)) );
+
+        mvc.perform( MockMvcRequestBuilders.post(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json) )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("$", Matchers.hasSize(3)) )
+                .andExpect( jsonPath("$[0].status").value("INVALID") )
+                .andExpect( jsonPath("$[0].errors", Matchers.hasSize(1)) )
+                .andExpect( jsonPath("$[1].status").value("INVALID") )
+                .andExpect( jsonPath("$[1].customer").value("Ciclano") )
+                .andExpect( jsonPath("$[1].errors[0]").value(Matchers.startsWith("isbn ")) )
+                .andExpect( jsonPath("$[2].id").value(1) )
+                .andExpect( jsonPath("$[2].status").value("CREATED") );
+
+        // só o item válido chega no service
+        Mockito.verify(loanService).checkout( Mockito.argThat(dtos -> dtos.size() == 1 && "001".equals(dtos.get(0).getIsbn())) );
+    }
+
+    @Test
+    @DisplayName("Deve responder as estatísticas de empréstimos")
+    public void statisticsTest() throws Exception {
+        BookDTO book = BookDTO.builder().id(1l).title("Aventuras").author("Fulano").isbn("123").build();
+        BDDMockito.given( loanService.getStatistics(5) ).willReturn( new LoanStatisticsDTO(4, 1, 3, 0.75,
+                Arrays.asList(new BookLoanCountDTO(book, 4))) );
+
+        mvc.perform( MockMvcRequestBuilders.get(LOAN_API + "/statistics?top=5").accept(MediaType.APPLICATION_JSON) )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("totalLoans").value(4) )
+                .andExpect( jsonPath("returnRate").value(0.75) )
+                .andExpect( jsonPath("mostBorrowed[0].book.title").value("Aventuras") )
+                .andExpect( jsonPath("mostBorrowed[0].loans").value(4) );
+    }
+
+    @Test
+    @DisplayName("Deve retornar 404 nas estatísticas de um livro inexistente")
+    public void bookStatisticsNotFoundTest() throws Exception {
+        BDDMockito.given( loanService.getBookStatistics(1l) ).willReturn( Optional.empty() );
+
+        mvc.perform( MockMvcRequestBuilders.get(LOAN_API + "/statistics/books/1").accept(MediaType.APPLICATION_JSON) )
+                .andExpect( status().isNotFound() );
+    }
+
+    @Test
+    @DisplayName("Deve devolver em lote e responder o resultado de cada id")
+    public void returnBatchTest() throws Exception {
+        BDDMockito.given( loanService.returnLoans(Arrays.asList(1l, 2l)) ).willReturn( Arrays.asList(
+                LoanItemResultDTO.returned(1l, LoanItemResultDTO.Status.RETURNED),
+                LoanItemResultDTO.returned(2l, LoanItemResultDTO.Status.NOT_FOUND)) );
+
+        mvc.perform( MockMvcRequestBuilders.patch(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2]") )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("$[0].status").value("RETURNED") )
+                .andExpect( jsonPath("$[1].status").value("NOT_FOUND") );
+    }
+
+    @Test
+    @DisplayName("Id nulo na devolução em lote deve voltar INVALID no próprio item")
+    public void returnBatchNullIdTest() throws Exception {
+        BDDMockito.given( loanService.returnLoans(Arrays.asList(1l)) ).willReturn( Arrays.asList(
+                LoanItemResultDTO.returned(1l, LoanItemResultDTO.Status.RETURNED)) );
+
+        mvc.perform( MockMvcRequestBuilders.patch(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[null,1]") )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("$[0].status").value("INVALID") )
+                .andExpect( jsonPath("$[1].id").value(1) )
+                .andExpect( jsonPath("$[1].status").value("RETURNED") );
+    }
+
+    @Test
+    @DisplayName("Lote só com itens inválidos não deve chamar o service")
+    public void createBatchAllInvalidTest() throws Exception {
+        mvc.perform( MockMvcRequestBuilders.post(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[null]") )
+                .andExpect( status().isOk() )
+                .andExpect( jsonPath("$[0].status").value("INVALID") );
+
+        Mockito.verify(loanService, Mockito.never()).checkout(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve recusar lote acima do limite")
+    public void batchTooLargeTest() throws Exception {
+        String ids = LongStream.rangeClosed(1, LoanController.BATCH_LIMIT + 1)
+                .mapToObj(Long::toString).collect(Collectors.joining(",", "[", "]"));
+
+        mvc.perform( MockMvcRequestBuilders.patch(LOAN_API + "/batch")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(ids) )
+                .andExpect( status().isBadRequest() );
+
+        Mockito.verify(loanService, Mockito.never()).returnLoans(Mockito.anyList());
     }
 
     @Test
@@ -142,9 +292,8 @@ public class LoanControllerTest {
     public void returnBookTest() throws Exception{
         //cenário { returned: true }
         ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
-        Loan loan = Loan.builder().id(1l).build();
-        BDDMockito.given( loanService.getById(Mockito.anyLong()) )
-                .willReturn(Optional.of(loan));
+        // Devolução é um update direto (sem carregar o empréstimo)
+        BDDMockito.given( loanService.returnLoan(1l) ).willReturn( LoanItemResultDTO.Status.RETURNED );
 
         String json = new ObjectMapper().writeValueAsString(dto);
 
@@ -155,8 +304,75 @@ public class LoanControllerTest {
             .content(json)
         ).andExpect( status().isOk() );
 
-        Mockito.verify(loanService, Mockito.times(1)).update(loan);
+        Mockito.verify(loanService, Mockito.times(1)).returnLoan(1l);
+        Mockito.verify(loanService, Mockito.never()).getById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve devolver com If-Match só se o empréstimo estiver na versão informada, senão 412")
+    public void returnBookIfMatchTest() throws Exception{
+        String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+        BDDMockito.given( loanService.returnLoan(1l, Arrays.asList(3l)) ).willReturn( LoanItemResultDTO.Status.RETURNED );
+        BDDMockito.given( loanService.returnLoan(1l, Arrays.asList(2l)) ).willReturn( LoanItemResultDTO.Status.MODIFIED );
+
+        mvc.perform( patch(LOAN_API.concat("/1")).contentType(MediaType.APPLICATION_JSON).content(json)
+                        .header(HttpHeaders.IF_MATCH, "\"3\"") )
+                .andExpect( status().isOk() );
+        mvc.perform( patch(LOAN_API.concat("/1")).contentType(MediaType.APPLICATION_JSON).content(json)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"") )
+                .andExpect( status().isPreconditionFailed() );
+        // ETag fraco nunca bate na comparação forte do If-Match
+        mvc.perform( patch(LOAN_API.concat("/1")).contentType(MediaType.APPLICATION_JSON).content(json)
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"") )
+                .andExpect( status().isPreconditionFailed() );
+
+        Mockito.verify(loanService, Mockito.never()).returnLoan(1l);
+    }
+
+    @Test
+    @DisplayName("Deve obter um empréstimo com a versão no ETag")
+    public void getLoanTest() throws Exception{
+        Loan loan = Loan.builder().id(1l).customer("Fulano").book(Book.builder().id(1l).isbn("123").build())
+                .loanDate(LocalDate.now()).version(5).build();
+        BDDMockito.given( loanService.getById(1l) ).willReturn( Optional.of(loan) );
+
+        mvc.perform( MockMvcRequestBuilders.get(LOAN_API.concat("/1")).accept(MediaType.APPLICATION_JSON) )
+                .andExpect( status().isOk() )
+                .andExpect( header().string(HttpHeaders.ETAG, "\"5\"") )
+                .andExpect( jsonPath("isbn").value("123") );
+    }
+
+    @Test
+    @DisplayName("Deve retornar conflito ao devolver um empréstimo já devolvido")
+    public void returnAlreadyReturnedBookTest() throws Exception{
+        String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+        BDDMockito.given( loanService.returnLoan(1l) ).willReturn( LoanItemResultDTO.Status.ALREADY_RETURNED );
+
+        mvc.perform(
+                patch(LOAN_API.concat("/1"))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json)
+        ).andExpect( status().isConflict() )
+         .andExpect( jsonPath("errors[0]").value("Loan already returned") );
+    }
+
+    @Test
+    @DisplayName("Deve reabrir um empréstimo pelo caminho de atualização")
+    public void reopenLoanTest() throws Exception{
+        String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(false).build());
+        Loan loan = Loan.builder().id(1l).returned(true).build();
+        BDDMockito.given( loanService.getById(1l) ).willReturn( Optional.of(loan) );
+
+        mvc.perform(
+                patch(LOAN_API.concat("/1"))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json)
+        ).andExpect( status().isOk() );
 
+        Mockito.verify(loanService).update( Mockito.argThat(updated -> Boolean.FALSE.equals(updated.getReturned())) );
+        Mockito.verify(loanService, Mockito.never()).returnLoan(Mockito.anyLong());
     }
 
     @Test
@@ -166,7 +382,7 @@ public class LoanControllerTest {
         ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
         String json = new ObjectMapper().writeValueAsString(dto);
 
-        BDDMockito.given(loanService.getById(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(loanService.returnLoan(Mockito.anyLong())).willReturn(LoanItemResultDTO.Status.NOT_FOUND);
 
         mvc.perform(
                 patch(LOAN_API.concat("/1"))
@@ -190,8 +406,11 @@ public class LoanControllerTest {
         loan.setBook(book);
 
         //  PageRequest.of :: Página 1, cada página tem 10 itens, só voltou um item
-        BDDMockito.given( loanService.find( Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)) )
-              	  	.willReturn( new PageImpl<Loan>( Arrays.asList(loan), PageRequest.of(0,10), 1 ) );
+        // O service já devolve a página projetada em LoanDTO
+        LoanDTO projected = new LoanDTO(id, loan.getCustomer(), loan.getCustomerEmail(), loan.getLoanDate(), loan.getReturned(),
+                book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+        BDDMockito.given( loanService.findProjected( Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)) )
+              	  	.willReturn( new PageImpl<LoanDTO>( Arrays.asList(projected), PageRequest.of(0,10), 1 ) );
 
         String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10",
                 book.getIsbn(), loan.getCustomer());
@@ -210,7 +429,28 @@ public class LoanControllerTest {
         ;
     }
 
+    @Test
+    @DisplayName("Deve exportar os empréstimos em NDJSON")
+    public void exportLoansTest() throws Exception {
+        // Mock: o service entrega duas linhas para o consumidor que escreve a resposta
+        Mockito.doAnswer( invocation -> {
+            Consumer<LoanDTO> sink = invocation.getArgument(0);
+            sink.accept( LoanDTO.builder().id(1l).isbn("123").customer("Fulano").build() );
+            sink.accept( LoanDTO.builder().id(2l).isbn("456").customer("Ciclano").build() );
+            return null;
+        }).when(loanService).exportLoans(Mockito.any());
+
+        // StreamingResponseBody é assíncrono: primeiro inicia, depois despacha para ler o corpo
+        MvcResult started = mvc.perform( MockMvcRequestBuilders.get(LOAN_API.concat("/export")) )
+                .andExpect( request().asyncStarted() )
+                .andReturn();
+
+        mvc.perform( asyncDispatch(started) )
+            .andExpect( status().isOk() )
+            .andExpect( content().contentType(NdjsonResponse.MEDIA_TYPE) )
+            .andExpect( content().string(Matchers.startsWith("{\"id\":1,\"isbn\":\"123\"")) )
+            .andExpect( content().string(Matchers.containsString("}\n{\"id\":2,")) )
+            .andExpect( content().string(Matchers.endsWith("}\n")) );
+    }
 
-
-
-}
\ No newline at end of file
+}
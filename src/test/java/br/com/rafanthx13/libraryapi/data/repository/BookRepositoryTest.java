@@ -8,15 +8,24 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.service.impl.BookServiceImpl;
+import br.com.rafanthx13.libraryapi.service.index.BookSearchIndex;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.PersistenceException;
+
 @ExtendWith(SpringExtension.class) // Necessário pois é String
 @ActiveProfiles("test") // Necessário apra os Testse
 @DataJpaTest // Indica que vou fazer testes com JPA. Vai executar um banco em memória para executar os tests
@@ -59,6 +68,32 @@ public class BookRepositoryTest {
 
     // test de getByID
 
+    @Test
+    @DisplayName("Deve incrementar a versão do livro a cada update")
+    public void versionTest(){
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        assertThat(book.getVersion()).isZero();
+
+        book.setTitle("Outro título");
+        entityManager.flush();
+
+        assertThat(book.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Filtro por id (Example do BookServiceImpl.find) deve achar o livro depois de um update")
+    public void findUpdatedBookByIdTest(){
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        book.setTitle("Outro título");
+        entityManager.flush();
+        // sem filtro de texto o BookSearchIndex não responde: cai no Example, que é o que está sendo testado
+        BookServiceImpl service = new BookServiceImpl(repository, new BookSearchIndex(repository), null);
+
+        Page<Book> result = service.find(Book.builder().id(book.getId()).build(), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).extracting(Book::getId).containsExactly(book.getId());
+    }
+
     @Test
     @DisplayName("Deve obter um livro por id.")
     public void findByIdTest(){
@@ -87,6 +122,16 @@ public class BookRepositoryTest {
 
     }
 
+    @Test
+    @DisplayName("Não deve salvar dois livros com o mesmo isbn")
+    public void uniqueIsbnTest(){
+        entityManager.persistAndFlush(createNewBook("123"));
+
+        Throwable exception = catchThrowable(() -> entityManager.persistAndFlush(createNewBook("123")));
+
+        assertThat(exception).isInstanceOf(PersistenceException.class);
+    }
+
     // DELETE
 
     @Test
@@ -105,6 +150,26 @@ public class BookRepositoryTest {
 
     }
 
+    // CURSOR
+
+    @Test
+    @DisplayName("Deve paginar por cursor seguindo a ordem do campo e desempatando pelo id")
+    public void findAfterTest(){
+        Book first = entityManager.persist(Book.builder().title("B").author("Fulano").isbn("1").build());
+        Book second = entityManager.persist(Book.builder().title("A").author("Fulano").isbn("2").build());
+        Book third = entityManager.persist(Book.builder().title("B").author("Fulano").isbn("3").build());
+        entityManager.persist(Book.builder().title("C").author("Ciclano").isbn("4").build());
+        Book filter = Book.builder().author("fulano").build();
+
+        Keyset keyset = Keyset.of("", Sort.by(Sort.Direction.DESC, "title"), BookKeysetRepository.SORTABLE);
+        List<Book> page = repository.findAfter(filter, keyset, 2);
+        // o próximo token sai da última linha da página
+        List<Book> next = repository.findAfter(filter, keyset.after(page.get(1)), 2);
+
+        assertThat(page).containsExactly(third, first);
+        assertThat(next).containsExactly(second);
+    }
+
     public static Book createNewBook(String isbn) {
         return Book.builder().title("Aventuras").author("Fulano").isbn(isbn).build();
     }
@@ -1,8 +1,13 @@
 package br.com.rafanthx13.libraryapi.data.repository;
 
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,20 +16,27 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static br.com.rafanthx13.libraryapi.data.repository.BookRepositoryTest.createNewBook;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
-@DataJpaTest // Necessário para os test do JPA, usadno H2
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true") // estatísticas para contar os selects
 public class LoanRepositoryTest {
 
     @Autowired
@@ -50,15 +62,40 @@ public class LoanRepositoryTest {
         assertThat(exists).isTrue();
     }
 
+    @Test
+    @DisplayName("Não deve permitir dois empréstimos ativos para o mesmo livro")
+    public void uniqueActiveLoanPerBookTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+
+        Loan other = Loan.builder().book(loan.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build();
+        Throwable exception = catchThrowable(() -> entityManager.persistAndFlush(other));
+
+        assertThat(exception).isInstanceOf(PersistenceException.class);
+    }
+
+    @Test
+    @DisplayName("Deve permitir um novo empréstimo depois que o livro foi devolvido")
+    public void newLoanAfterReturnTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+        loan.setReturned(true);
+        entityManager.persistAndFlush(loan);
+
+        Loan other = Loan.builder().book(loan.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build();
+        entityManager.persistAndFlush(other);
+
+        assertThat(loan.getActiveBookId()).isNull();
+        assertThat(other.getActiveBookId()).isEqualTo(loan.getBook().getId());
+    }
+
     // GET FILTER
 
     @Test
     @DisplayName("Deve buscar empréstimo pelo isbn do livro ou customer")
-    public void findByBookIsbnOrCustomerTest(){
+    public void findByFilterTest(){
         Loan loan = createAndPersistLoan(LocalDate.now());
 
-        Page<Loan> result = repository.findByBookIsbnOrCustomer(
-                "123", "Fulano", PageRequest.of(0, 10));
+        Page<Loan> result = repository.findByFilter(
+                LoanFilterDTO.builder().isbn("123").customer("Fulano").build(), PageRequest.of(0, 10));
 
         assertThat(result.getContent()).hasSize(1);
         assertThat(result.getContent()).contains(loan);
@@ -69,6 +106,91 @@ public class LoanRepositoryTest {
 
 
 
+    @Test
+    @DisplayName("Deve buscar empréstimos já projetados em LoanDTO, com o livro")
+    public void findProjectedByFilterTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+
+        Page<LoanDTO> result = repository.findProjectedByFilter(LoanFilterDTO.builder().isbn("123").build(), PageRequest.of(0, 10));
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent().get(0).getId()).isEqualTo(loan.getId());
+        assertThat(result.getContent().get(0).getIsbn()).isEqualTo("123");
+        assertThat(result.getContent().get(0).getBook().getTitle()).isEqualTo(loan.getBook().getTitle());
+    }
+
+    @Test
+    @DisplayName("Deve buscar a página de empréstimos com os livros em um select e o total em outro")
+    public void findByFilterStatementCountTest(){
+        for (int i = 0; i < 3; i++) {
+            Book book = entityManager.persist(createNewBook("isbn-" + i));
+            entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        }
+        entityManager.flush();
+        entityManager.clear(); // livros fora do persistence context, como numa requisição nova
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<Loan> result = repository.findByFilter(LoanFilterDTO.builder().customer("Fulano").build(), PageRequest.of(0, 2));
+        result.getContent().forEach(loan -> loan.getBook().getIsbn()); // o que o LoanMapper faz
+
+        assertThat(result.getContent()).hasSize(2);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        // 1 select da página (com join fetch) + 1 count; nenhum select de livro por empréstimo
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve buscar só pelos campos informados no filtro, sem tratar o campo ausente como null")
+    public void findByFilterCombinationsTest(){
+        Book first = entityManager.persist(createNewBook("isbn-1"));
+        Book second = entityManager.persist(createNewBook("isbn-2"));
+        Loan fulano = entityManager.persist(Loan.builder().book(first).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+        Loan ciclano = entityManager.persist(Loan.builder().book(first).customer("Ciclano").loanDate(LocalDate.now().minusDays(1)).build());
+        Loan other = entityManager.persist(Loan.builder().book(second).customer("Fulano").loanDate(LocalDate.now().minusDays(2)).build());
+        PageRequest page = PageRequest.of(0, 10, Sort.by("loanDate"));
+
+        assertThat(repository.findByFilter(LoanFilterDTO.builder().isbn("isbn-1").build(), page).getContent())
+                .containsExactly(ciclano, fulano);
+        assertThat(repository.findByFilter(LoanFilterDTO.builder().customer("Fulano").build(), page).getContent())
+                .containsExactly(other, fulano);
+        // union: o empréstimo que atende aos dois lados aparece uma vez só
+        Page<Loan> both = repository.findByFilter(LoanFilterDTO.builder().isbn("isbn-1").customer("Fulano").build(), page);
+        assertThat(both.getContent()).containsExactly(other, ciclano, fulano);
+        assertThat(both.getTotalElements()).isEqualTo(3);
+        assertThat(repository.findByFilter(new LoanFilterDTO(), page)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve paginar a union de isbn e customer, com o total")
+    public void findProjectedByFilterUnionPageTest(){
+        Book book = entityManager.persist(createNewBook("isbn-1"));
+        for (int i = 0; i < 3; i++) {
+            Book other = entityManager.persist(createNewBook("other-" + i));
+            entityManager.persist(Loan.builder().book(other).customer("Fulano").loanDate(LocalDate.now()).build());
+        }
+        entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build());
+        LoanFilterDTO filter = LoanFilterDTO.builder().isbn("isbn-1").customer("Fulano").build();
+
+        Page<LoanDTO> first = repository.findProjectedByFilter(filter, PageRequest.of(0, 3, Sort.by(Sort.Direction.DESC, "id")));
+        Page<LoanDTO> second = repository.findProjectedByFilter(filter, PageRequest.of(1, 3, Sort.by(Sort.Direction.DESC, "id")));
+
+        assertThat(first.getContent()).extracting(LoanDTO::getCustomer).containsExactly("Ciclano", "Fulano", "Fulano");
+        assertThat(first.getContent().get(0).getIsbn()).isEqualTo("isbn-1");
+        assertThat(second.getContent()).hasSize(1);
+        assertThat(first.getTotalElements()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Deve recusar ordenação por propriedade fora das permitidas")
+    public void findByFilterInvalidSortTest(){
+        Throwable exception = catchThrowable(() -> repository.findByFilter(
+                LoanFilterDTO.builder().customer("Fulano").build(), PageRequest.of(0, 10, Sort.by("returned"))));
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+    }
+
     @Test
     @DisplayName("Deve obter empréstimos cuja data emprestimo for menor ou igual a tres dias atras e nao retornados")
     public void findByLoanDateLessThanAndNotReturnedTest(){
@@ -89,6 +211,123 @@ public class LoanRepositoryTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    @DisplayName("Deve ler todos os empréstimos por cursor já projetados em LoanDTO")
+    public void streamAllTest(){
+        Loan loan = createAndPersistLoan( LocalDate.now() );
+
+        List<LoanDTO> result;
+        try (Stream<LoanDTO> loans = repository.streamAll()) {
+            result = loans.collect(Collectors.toList());
+        }
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getId()).isEqualTo(loan.getId());
+        assertThat(result.get(0).getCustomer()).isEqualTo("Fulano");
+        assertThat(result.get(0).getIsbn()).isEqualTo("123");
+        assertThat(result.get(0).getBook().getId()).isEqualTo(loan.getBook().getId());
+    }
+
+    @Test
+    @DisplayName("Deve paginar empréstimos por cursor pela data, com o livro já carregado")
+    public void findAfterTest(){
+        Loan older = createAndPersistLoan( LocalDate.now().minusDays(2) );
+        Book book = entityManager.persist(createNewBook("456"));
+        Loan newer = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        LoanFilterDTO filter = LoanFilterDTO.builder().customer("Fulano").build();
+
+        Keyset keyset = Keyset.of("", Sort.by(Sort.Direction.DESC, "loanDate"), LoanKeysetRepository.SORTABLE);
+        List<Loan> page = repository.findAfter(filter, keyset, 1);
+        // token de ida e volta como o cliente faria
+        Keyset next = Keyset.of(keyset.after(page.get(0)).encode(), Sort.unsorted(), LoanKeysetRepository.SORTABLE);
+
+        assertThat(page).containsExactly(newer);
+        assertThat(repository.findAfter(filter, next, 1)).containsExactly(older);
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor passando pelas linhas com o campo da ordenação null (null é o menor valor)")
+    public void findAfterNullValuesTest(){
+        Loan noDate = persistLoan("501", null);
+        Loan yesterday = persistLoan("502", LocalDate.now().minusDays(1));
+        Loan noDateToo = persistLoan("503", null);
+        Loan today = persistLoan("504", LocalDate.now());
+        LoanFilterDTO filter = LoanFilterDTO.builder().customer("Fulano").build();
+
+        assertThat(pageThrough(filter, Sort.by(Sort.Direction.ASC, "loanDate")))
+                .containsExactly(noDate, noDateToo, yesterday, today);
+        assertThat(pageThrough(filter, Sort.by(Sort.Direction.DESC, "loanDate")))
+                .containsExactly(today, yesterday, noDateToo, noDate);
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor a union de isbn e customer, sem repetir o empréstimo que atende aos dois")
+    public void findAfterUnionTest(){
+        Loan noDate = persistLoan("601", null);
+        Loan yesterday = persistLoan("602", LocalDate.now().minusDays(1));
+        Book book = entityManager.persist(createNewBook("603"));
+        Loan byIsbn = entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build());
+        Loan both = persistLoan("604", LocalDate.now().minusDays(2));
+        entityManager.persist(Loan.builder().book(entityManager.persist(createNewBook("605"))).customer("Beltrano").loanDate(LocalDate.now()).build());
+        LoanFilterDTO filter = LoanFilterDTO.builder().isbn("603").customer("Fulano").build();
+        LoanFilterDTO bothFilter = LoanFilterDTO.builder().isbn("604").customer("Fulano").build();
+
+        assertThat(pageThrough(filter, Sort.by(Sort.Direction.ASC, "loanDate")))
+                .containsExactly(noDate, both, yesterday, byIsbn);
+        assertThat(pageThrough(filter, Sort.by(Sort.Direction.DESC, "loanDate")))
+                .containsExactly(byIsbn, yesterday, both, noDate);
+        assertThat(pageThrough(bothFilter, Sort.by(Sort.Direction.ASC, "customer")))
+                .containsExactly(noDate, yesterday, both);
+    }
+
+    private Loan persistLoan(String isbn, LocalDate loanDate){
+        Book book = entityManager.persist(createNewBook(isbn));
+        return entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(loanDate).build());
+    }
+
+    // Uma linha por página, com o token de ida e volta como o cliente faria
+    private List<Loan> pageThrough(LoanFilterDTO filter, Sort sort){
+        List<Loan> all = new ArrayList<>();
+        Keyset keyset = Keyset.of("", sort, LoanKeysetRepository.SORTABLE);
+        List<Loan> page;
+        while (!(page = repository.findAfter(filter, keyset, 1)).isEmpty() && all.size() < 10) {
+            all.addAll(page);
+            keyset = Keyset.of(keyset.after(page.get(0)).encode(), Sort.unsorted(), LoanKeysetRepository.SORTABLE);
+        }
+        return all;
+    }
+
+    @Test
+    @DisplayName("Deve devolver em lote só os empréstimos em aberto, liberando o livro")
+    public void markReturnedTest(){
+        Loan open = createAndPersistLoan( LocalDate.now() );
+        Book book = entityManager.persist(createNewBook("456"));
+        Loan returned = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+        entityManager.flush();
+
+        int updated = repository.markReturned(Arrays.asList(open.getId(), returned.getId()));
+        entityManager.clear();
+
+        assertThat(updated).isEqualTo(1);
+        Loan reloaded = entityManager.find(Loan.class, open.getId());
+        assertThat(reloaded.getReturned()).isTrue();
+        assertThat(reloaded.getActiveBookId()).isNull();
+        assertThat(repository.findActiveBookIds(Arrays.asList(open.getBook().getId(), book.getId()))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve devolver um empréstimo com um único update condicional")
+    public void markReturnedByIdTest(){
+        Loan loan = createAndPersistLoan( LocalDate.now() );
+        entityManager.flush();
+
+        assertThat(repository.markReturnedById(loan.getId())).isEqualTo(1);
+        assertThat(repository.markReturnedById(loan.getId())).isZero(); // segunda vez: já devolvido
+        assertThat(repository.markReturnedById(-1l)).isZero();
+        entityManager.clear();
+        assertThat(entityManager.find(Loan.class, loan.getId()).getActiveBookId()).isNull();
+    }
+
     // Privado para Criar Loan e carregalo no banco para alguns tests
 
     public Loan createAndPersistLoan(LocalDate loanDate){
@@ -0,0 +1,148 @@
+package br.com.rafanthx13.libraryapi.data.repository;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Confere o plano (EXPLAIN do H2) do SQL que o Hibernate realmente gera para cada método de consulta:
+o SQL é capturado por um StatementInspector e cada statement tem que usar índice (nenhum 'tableScan')
+*/
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "br.com.rafanthx13.libraryapi.data.repository.QueryPlanTest$Statements")
+public class QueryPlanTest {
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    // Guarda o SQL de cada statement que o Hibernate prepara
+    public static class Statements implements StatementInspector {
+
+        static final List<String> SQL = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.add(sql);
+            return sql;
+        }
+    }
+
+    @BeforeEach
+    public void setUp(){
+        // massa pequena, só para o otimizador ter estatística de tabela com linhas
+        jdbc.update("insert into book (id, title, author, isbn) select x, 'Title ' || x, 'Author', 'isbn-' || x from system_range(1, 1000)");
+        jdbc.update("insert into loan (id, customer, id_book, loan_date, returned) "
+                + "select x, 'customer-' || x, x, dateadd('DAY', -mod(x, 30), current_date), mod(x, 2) = 0 from system_range(1, 1000)");
+        Statements.SQL.clear();
+    }
+
+    @Test
+    @DisplayName("findByIsbn e existsByIsbn devem usar o índice único do isbn")
+    public void isbnTest(){
+        assertThat(plan(() -> bookRepository.findByIsbn("isbn-1"))).contains("UK_BOOK_ISBN");
+        assertThat(plan(() -> bookRepository.existsByIsbn("isbn-1"))).contains("UK_BOOK_ISBN");
+    }
+
+    @Test
+    @DisplayName("findByBook e existsByBookAndNotReturned devem usar o índice da FK do livro")
+    public void bookTest(){
+        Book book = Book.builder().id(1l).build();
+
+        assertThat(plan(() -> loanRepository.findByBook(book, PageRequest.of(0, 10)))).contains("FK_LOAN_BOOK");
+        assertThat(plan(() -> loanRepository.existsByBookAndNotReturned(book))).contains("FK_LOAN_BOOK");
+    }
+
+    @Test
+    @DisplayName("Busca de empréstimos deve usar o índice de cada campo informado no filtro")
+    public void loanFilterTest(){
+        LoanFilterDTO isbn = LoanFilterDTO.builder().isbn("isbn-1").build();
+        LoanFilterDTO customer = LoanFilterDTO.builder().customer("customer-2").build();
+        LoanFilterDTO both = LoanFilterDTO.builder().isbn("isbn-1").customer("customer-2").build();
+
+        assertThat(plan(() -> loanRepository.findByFilter(isbn, PageRequest.of(0, 10)))).contains("UK_BOOK_ISBN");
+        assertThat(plan(() -> loanRepository.findByFilter(customer, PageRequest.of(0, 10)))).contains("IDX_LOAN_CUSTOMER");
+        // union: cada lado no seu índice
+        assertThat(plan(() -> loanRepository.findProjectedByFilter(both, PageRequest.of(0, 10))))
+                .contains("UK_BOOK_ISBN").contains("FK_LOAN_BOOK").contains("IDX_LOAN_CUSTOMER");
+    }
+
+    @Test
+    @DisplayName("Busca de empréstimos por cursor com isbn e customer deve ser a union, cada lado no seu índice")
+    public void loanKeysetUnionTest(){
+        LoanFilterDTO both = LoanFilterDTO.builder().isbn("isbn-1").customer("customer-2").build();
+        Keyset first = Keyset.of("", Sort.by(Sort.Direction.DESC, "loanDate"), LoanKeysetRepository.SORTABLE);
+        Keyset next = first.after(Loan.builder().id(500l).loanDate(LocalDate.now()).build());
+
+        assertThat(plan(() -> loanRepository.findAfter(both, first, 10)))
+                .contains("UK_BOOK_ISBN").contains("FK_LOAN_BOOK").contains("IDX_LOAN_CUSTOMER");
+        assertThat(plan(() -> loanRepository.findAfter(both, next, 10)))
+                .contains("UK_BOOK_ISBN").contains("FK_LOAN_BOOK").contains("IDX_LOAN_CUSTOMER");
+    }
+
+    @Test
+    @DisplayName("Empréstimos atrasados devem usar o índice (loanDate, returned)")
+    public void lateLoansTest(){
+        assertThat(plan(() -> loanRepository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(25)))).contains("IDX_LOAN_LOAN_DATE_RETURNED");
+    }
+
+    // Executa a consulta e devolve o EXPLAIN do seu select (parâmetros null: o plano não depende do valor).
+    // Os selects seguintes (livro de cada empréstimo, count da página) também não podem varrer tabela
+    private String plan(Runnable query){
+        Statements.SQL.clear();
+        query.run();
+        List<String> plans = Statements.SQL.stream()
+                .filter(sql -> sql.trim().startsWith("select"))
+                .map(this::explain)
+                .collect(Collectors.toList());
+        assertThat(plans).isNotEmpty();
+        plans.forEach(plan -> assertThat(plan).doesNotContain("tableScan"));
+        return plans.get(0);
+    }
+
+    private String explain(String sql){
+        return jdbc.execute((Connection connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setNull(i, Types.NULL);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    result.next();
+                    return result.getString(1);
+                }
+            }
+        });
+    }
+}
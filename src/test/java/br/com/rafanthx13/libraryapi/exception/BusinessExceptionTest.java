@@ -0,0 +1,32 @@
+package br.com.rafanthx13.libraryapi.exception;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class BusinessExceptionTest {
+
+    @Test
+    @DisplayName("Não deve capturar stack trace nem acumular suppressed, podendo ser lançada de novo")
+    public void stacklessTest(){
+        BusinessException exception = new BusinessException("Isbn já cadastrado.");
+        exception.addSuppressed(new IllegalStateException());
+
+        assertThat(exception.getStackTrace()).isEmpty();
+        assertThat(exception.getSuppressed()).isEmpty();
+        assertThat(catchThrowable(() -> { throw exception; })).isSameAs(exception);
+    }
+
+    @Test
+    @DisplayName("Deve trazer o corpo de erro pronto e imutável")
+    public void errorsTest(){
+        BusinessException exception = new BusinessException("Isbn já cadastrado.");
+
+        assertThat(exception.getErrors().getErrors()).containsExactly("Isbn já cadastrado.");
+        assertThat(exception.getErrors()).isSameAs(exception.getErrors());
+        assertThat(catchThrowable(() -> exception.getErrors().getErrors().add("outro")))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
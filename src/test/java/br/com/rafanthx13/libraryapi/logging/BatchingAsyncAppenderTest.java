@@ -0,0 +1,153 @@
+package br.com.rafanthx13.libraryapi.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.OutputStreamAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchingAsyncAppenderTest {
+
+    LoggerContext context;
+    Logger logger;
+    BatchingAsyncAppender appender;
+
+    @BeforeEach
+    public void setUp(){
+        context = new LoggerContext();
+        logger = context.getLogger("test");
+        logger.setAdditive(false);
+        appender = new BatchingAsyncAppender();
+        appender.setContext(context);
+        appender.setName("test");
+    }
+
+    @AfterEach
+    public void tearDown(){
+        context.stop();
+    }
+
+    @Test
+    @DisplayName("Deve escrever todos os eventos em ordem, com um flush por lote")
+    public void batchTest(){
+        FlushCountingStream stream = new FlushCountingStream();
+        OutputStreamAppender<ILoggingEvent> file = new OutputStreamAppender<>();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.start();
+        file.setContext(context);
+        file.setEncoder(encoder);
+        file.setOutputStream(stream);
+        file.start();
+        appender.addAppender(file);
+        appender.start();
+        logger.addAppender(appender);
+
+        IntStream.range(0, 1000).forEach( i -> logger.info("linha {}", i) );
+        appender.stop(); // esvazia a fila antes de parar
+
+        assertThat(Arrays.asList(stream.toString().split("\n")))
+                .isEqualTo(IntStream.range(0, 1000).mapToObj(i -> "linha " + i).collect(Collectors.toList()));
+        // sem immediateFlush: os flushes são por lote, não por linha
+        assertThat(stream.flushes.get()).isPositive().isLessThan(1000);
+    }
+
+    @Test
+    @DisplayName("Fila cheia com overflow=drop deve descartar e contar, sem travar quem loga")
+    public void dropTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        AppenderBase<ILoggingEvent> slow = new AppenderBase<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.incrementAndGet();
+            }
+        };
+        slow.setContext(context);
+        slow.start();
+        appender.setQueueSize(4);
+        appender.setOverflow("drop");
+        appender.addAppender(slow);
+        appender.start();
+        logger.addAppender(appender);
+
+        IntStream.range(0, 100).forEach( i -> logger.info("linha {}", i) );
+        assertThat(appender.getDropped()).isPositive();
+
+        release.countDown();
+        appender.stop();
+        assertThat(written.get() + appender.getDropped()).isEqualTo(100);
+    }
+
+    @Test
+    @DisplayName("Com async=false deve escrever na própria thread, sem fila")
+    public void syncTest(){
+        AtomicInteger written = new AtomicInteger();
+        AppenderBase<ILoggingEvent> target = new AppenderBase<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                written.incrementAndGet();
+            }
+        };
+        target.setContext(context);
+        target.start();
+        appender.setAsync(false);
+        appender.addAppender(target);
+        appender.start();
+        logger.addAppender(appender);
+
+        logger.warn("linha");
+
+        assertThat(written.get()).isEqualTo(1);
+        assertThat(appender.getQueueDepth()).isZero();
+    }
+
+    static class FlushCountingStream extends OutputStream {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushes.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return bytes.toString();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.rafanthx13.libraryapi.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RequestLogFilterTest {
+
+    Logger logger = (Logger) LoggerFactory.getLogger(RequestLogFilter.LOGGER);
+    ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+    @BeforeEach
+    public void setUp(){
+        events.start();
+        logger.addAppender(events);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        logger.detachAppender(events);
+    }
+
+    @Test
+    @DisplayName("Deve registrar uma linha JSON com o padrão do endpoint, status e latência")
+    public void requestLogTest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/10");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/books/{id}");
+                resp.setStatus(404);
+            }
+        });
+
+        new RequestLogFilter().doFilter(request, response, chain);
+
+        assertThat(events.list).hasSize(1);
+        assertThat(events.list.get(0).getFormattedMessage())
+                .startsWith("{\"ts\":\"")
+                .contains("\"method\":\"GET\",\"endpoint\":\"/api/books/{id}\",\"status\":404,\"latencyMs\":")
+                .matches(".*\"latencyMs\":\\d+\\.\\d{3}}");
+    }
+
+    @Test
+    @DisplayName("Sem mapeamento deve usar a URI, com escape de JSON")
+    public void unmappedTest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/\"x\\y");
+
+        new RequestLogFilter().doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(events.list.get(0).getFormattedMessage()).contains("\"endpoint\":\"/api/\\\"x\\\\y\",\"status\":200");
+    }
+
+    @Test
+    @DisplayName("Exceção sem tratamento deve ser registrada com 500 e continuar subindo")
+    public void unhandledExceptionTest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/3000000000");
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                throw new ArithmeticException("integer overflow");
+            }
+        });
+
+        Throwable exception = catchThrowable(() -> new RequestLogFilter().doFilter(request, new MockHttpServletResponse(), chain));
+
+        assertThat(exception).isInstanceOf(ArithmeticException.class);
+        assertThat(events.list).hasSize(1);
+        assertThat(events.list.get(0).getFormattedMessage()).contains("\"status\":500");
+    }
+}
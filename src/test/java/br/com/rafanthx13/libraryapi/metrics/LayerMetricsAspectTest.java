@@ -0,0 +1,104 @@
+package br.com.rafanthx13.libraryapi.metrics;
+
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Teste de integração: uma requisição de verdade tem que aparecer em todas as camadas e no /actuator/prometheus
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class LayerMetricsAspectTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @AfterEach
+    public void tearDown(){
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve medir controller, service, repository e mapper e contar o SQL do endpoint")
+    public void layersTest() throws Exception {
+        mvc.perform( MockMvcRequestBuilders.post("/api/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"metrics-001\"}") )
+            .andExpect( status().isCreated() );
+
+        assertThat(timer("controller", "BookController", "create").count()).isPositive();
+        assertThat(timer("service", "BookServiceImpl", "save").count()).isPositive();
+        assertThat(timer("repository", "BookRepository", "saveAndFlush").count()).isPositive();
+        assertThat(timer("mapper", "BookMapperImpl", "toEntity").count()).isPositive();
+
+        // ao menos o existsByIsbn e o insert
+        DistributionSummary statements = registry.get(LayerMetricsAspect.SQL_STATEMENTS)
+                .tags("class", "BookController", "method", "create")
+                .summary();
+        assertThat(statements.count()).isPositive();
+        assertThat(statements.max()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve contar o SQL da exportação, que roda no StreamingResponseBody em outra thread")
+    public void streamingStatementsTest() throws Exception {
+        MvcResult started = mvc.perform( MockMvcRequestBuilders.get("/api/books/export") )
+            .andExpect( request().asyncStarted() )
+            .andReturn();
+        mvc.perform( asyncDispatch(started) )
+            .andExpect( status().isOk() );
+
+        // o método do controller só monta o corpo: o select da exportação (mesmo sem linhas) só aparece se o corpo for contado
+        DistributionSummary statements = registry.get(LayerMetricsAspect.SQL_STATEMENTS)
+                .tags("class", "BookController", "method", "export")
+                .summary();
+        assertThat(statements.count()).isEqualTo(1);
+        assertThat(statements.max()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve publicar os histogramas no formato do Prometheus")
+    public void prometheusTest() throws Exception {
+        mvc.perform( MockMvcRequestBuilders.get("/api/books/0/availability") );
+
+        mvc.perform( MockMvcRequestBuilders.get("/actuator/prometheus") )
+            .andExpect( status().isOk() )
+            .andExpect( content().string(containsString("library_layer_seconds_bucket{")) )
+            .andExpect( content().string(containsString("library_sql_statements_bucket{")) );
+    }
+
+    private Timer timer(String layer, String type, String method){
+        return registry.get(LayerMetricsAspect.LAYER_TIMER)
+                .tags("layer", layer, "class", type, "method", method)
+                .timer();
+    }
+}
@@ -0,0 +1,99 @@
+package br.com.rafanthx13.libraryapi.service;
+
+import br.com.rafanthx13.libraryapi.config.CacheConfig;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.service.impl.BookServiceImpl;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.BookSearchIndex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Sobe só o BookServiceImpl com o cache configurado pelo application.properties (Caffeine)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(classes = { CacheConfig.class, BookServiceImpl.class, BookSearchIndex.class })
+@ImportAutoConfiguration(CacheAutoConfiguration.class)
+public class BookServiceCacheTest {
+
+    @Autowired
+    BookService service;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @MockBean
+    BookRepository repository;
+
+    @MockBean
+    BookAvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    public void setUp(){
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    @DisplayName("Deve buscar o livro pelo isbn no banco uma única vez")
+    public void getBookByIsbnIsCachedTest(){
+        Book book = Book.builder().id(1l).isbn("123").title("Aventuras").author("Fulano").build();
+        when( repository.findByIsbn("123") ).thenReturn(Optional.of(book));
+
+        service.getBookByIsbn("123");
+        Optional<Book> cached = service.getBookByIsbn("123");
+
+        assertThat(cached).contains(book);
+        verify(repository, times(1)).findByIsbn("123");
+    }
+
+    @Test
+    @DisplayName("Não deve cachear livro inexistente")
+    public void missingBookIsNotCachedTest(){
+        when( repository.findById(1l) ).thenReturn(Optional.empty());
+
+        service.getById(1l);
+        service.getById(1l);
+
+        verify(repository, times(2)).findById(1l);
+    }
+
+    @Test
+    @DisplayName("Deve invalidar o cache ao atualizar e ao deletar o livro")
+    public void updateAndDeleteEvictTest(){
+        Book book = Book.builder().id(1l).isbn("123").title("Aventuras").author("Fulano").build();
+        when( repository.findById(1l) ).thenReturn(Optional.of(book));
+        when( repository.findByIsbn("123") ).thenReturn(Optional.of(book));
+        when( repository.save(book) ).thenReturn(book);
+
+        service.getById(1l);
+        service.getBookByIsbn("123");
+        service.update(book);
+        service.getById(1l);
+        service.getBookByIsbn("123");
+        service.delete(book);
+        service.getById(1l);
+
+        verify(repository, times(3)).findById(1l);
+        verify(repository, times(2)).findByIsbn("123");
+        verify(repository, times(1)).delete(Mockito.any(Book.class));
+    }
+}
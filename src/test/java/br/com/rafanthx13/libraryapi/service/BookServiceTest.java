@@ -5,20 +5,30 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.hibernate.exception.ConstraintViolationException;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 // import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookAvailabilityDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.BookImportResultDTO;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
 import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.service.impl.BookServiceImpl;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.BookSearchIndex;
 
 import java.util.Arrays;
 import java.util.List;
@@ -37,12 +47,21 @@ public class BookServiceTest {
 
   BookService service;
 
+  BookSearchIndex searchIndex;
+
+  BookAvailabilityIndex availabilityIndex;
+
   @MockBean
   BookRepository repository;
 
+  @MockBean
+  LoanRepository loanRepository;
+
   @BeforeEach
   public void setUp(){
-    this.service = new BookServiceImpl(repository);
+    this.searchIndex = new BookSearchIndex(repository);
+    this.availabilityIndex = new BookAvailabilityIndex(loanRepository);
+    this.service = new BookServiceImpl(repository, searchIndex, availabilityIndex);
   }
 
   @Test
@@ -50,10 +69,8 @@ public class BookServiceTest {
   public void saveBookTest() {
       //cenario
       Book book = createValidBook(); // Instnacia valida
-      // vai dar falsa a existencia de ISBN, se for true, nao vai progredir (estamos respoetiando a regra de negocio)
-      Mockito.when(repository.existsByIsbn(Mockito.anyString()) ).thenReturn(false);
       // Mock do salvamento de livro
-      Mockito.when(repository.save(book)).thenReturn(
+      Mockito.when(repository.saveAndFlush(book)).thenReturn(
               Book.builder().id(1l)
                       .isbn("123")
                       .author("Fulano")
@@ -75,9 +92,9 @@ public class BookServiceTest {
   public void shouldNotSaveABookWithDuplicatedISBN(){
 
       // cenario
-      // Faço um Mock dizendo que ao verificar o ISBN retornara como true nesse testse
+      // Faço um Mock dizendo que o insert viola a unique do ISBN nesse testse
       Book book = createValidBook();
-      Mockito.when( repository.existsByIsbn(Mockito.anyString()) ).thenReturn(true);
+      Mockito.when( repository.saveAndFlush(book) ).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
 
       // execucao
       // Espero que ao fazer o save de isbn duplicado, dê erro e solte uma exceção
@@ -88,12 +105,23 @@ public class BookServiceTest {
               .isInstanceOf(BusinessException.class)
               .hasMessage("Isbn já cadastrado.");
 
-      // Testo que o método repository.save não foi chamado. 
-      // Nâo deve ser chamado pois existiByIsbn bloqueia pois é true e nâo proseggue
-      Mockito.verify(repository, Mockito.never()).save(book);
+      // Testo que não houve consulta antes do insert: a regra fica na unique do banco
+      Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
 
   }
 
+  @Test
+  @DisplayName("Outras violações do banco (ex: título longo demais) não devem virar 'isbn já cadastrado'")
+  public void shouldNotTranslateOtherViolations(){
+      Book book = createValidBook();
+      DataIntegrityViolationException violation = violation(null);
+      Mockito.when( repository.saveAndFlush(book) ).thenThrow(violation);
+
+      Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+      assertThat(exception).isSameAs(violation);
+  }
+
   // getByID
 
   @Test
@@ -199,18 +227,18 @@ public class BookServiceTest {
   @Test
   @DisplayName("Deve filtrar livros pelas propriedades")
   public void findBookTest(){
-      //cenario
+      //cenario: o livro está no índice, e o repository só é usado para carregar os livros da página
       Book book = createValidBook();
+      book.setId(1l);
+      searchIndex.add(book);
 
       PageRequest pageRequest = PageRequest.of(0, 10);
 
       List<Book> lista = Arrays.asList(book);
-      Page<Book> page = new PageImpl<Book>(lista, pageRequest, 1);
-      when( repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-              .thenReturn(page);
+      when( repository.findAllById(Arrays.asList(1l)) ).thenReturn(lista);
 
       //execucao
-      Page<Book> result = service.find(book, pageRequest);
+      Page<Book> result = service.find(createValidBook(), pageRequest);
 
 
       //verificacoes
@@ -220,8 +248,52 @@ public class BookServiceTest {
       assertThat(result.getPageable().getPageSize()).isEqualTo(10);
   }
 
+  @Test
+  @DisplayName("Deve filtrar livros pelo banco quando não houver filtro de texto")
+  public void findBookWithoutTextFilterTest(){
+      //cenario: sem title/author/isbn o índice não é usado e a busca continua pelo Example
+      Book filter = Book.builder().id(1l).build();
+      Book book = createValidBook();
+      book.setId(1l);
+
+      PageRequest pageRequest = PageRequest.of(0, 10);
+
+      List<Book> lista = Arrays.asList(book);
+      Page<Book> page = new PageImpl<Book>(lista, pageRequest, 1);
+      when( repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+              .thenReturn(page);
+
+      //execucao
+      Page<Book> result = service.find(filter, pageRequest);
+
+      //verificacoes
+      assertThat(result.getTotalElements()).isEqualTo(1);
+      assertThat(result.getContent()).isEqualTo(lista);
+      Mockito.verify(repository, Mockito.never()).findAllById(Mockito.any());
+  }
+
   // GET Book by ISBN
 
+  @Test
+  @DisplayName("Deve listar livros projetados em BookDTO, pelo índice quando há filtro de texto")
+  public void findProjectedTest(){
+      searchIndex.add(Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build());
+      PageRequest pageRequest = PageRequest.of(0, 10);
+      when( repository.findProjectedByIdIn(Arrays.asList(1l)) )
+            .thenReturn( Arrays.asList(new BookDTO(1l, "As aventuras", "Fulano", "123")) );
+      when( repository.findAllProjected(pageRequest) )
+            .thenReturn( new PageImpl<>(Arrays.asList(new BookDTO(1l, "As aventuras", "Fulano", "123")), pageRequest, 1) );
+
+      Page<BookDTO> filtered = service.findProjected(Book.builder().title("aventura").build(), pageRequest);
+      Page<BookDTO> all = service.findProjected(new Book(), pageRequest);
+
+      assertThat(filtered.getContent()).extracting(BookDTO::getIsbn).containsExactly("123");
+      assertThat(all.getTotalElements()).isEqualTo(1);
+      // nenhuma entidade carregada
+      Mockito.verify(repository, Mockito.never()).findAllById(Mockito.anyIterable());
+      Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(Pageable.class));
+  }
+
   @Test
   @DisplayName("deve obter um livro pelo isbn")
   public void getBookByIsbnTest(){
@@ -238,10 +310,91 @@ public class BookServiceTest {
       Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn); // verifica se chamaou uma vez esse método
   }
 
+  @Test
+  @DisplayName("Deve importar em lote recusando isbn repetido no arquivo e isbn já cadastrado")
+  public void importBooksTest(){
+      List<Book> books = Arrays.asList(
+              Book.builder().isbn("1").title("A").author("Fulano").build(),
+              Book.builder().isbn("2").title("B").author("Fulano").build(),
+              Book.builder().isbn("1").title("C").author("Fulano").build()
+      );
+      when( repository.findExistingIsbns(Mockito.anyCollection()) ).thenReturn( Arrays.asList("2") );
+      when( repository.saveAll(Mockito.anyList()) ).thenAnswer( invocation -> {
+          List<Book> chunk = invocation.getArgument(0);
+          chunk.forEach( book -> book.setId(Long.valueOf(book.getIsbn())) );
+          return chunk;
+      });
+
+      BookImportResultDTO result = service.importBooks(books.iterator());
+
+      assertThat(result.getImported()).isEqualTo(1);
+      assertThat(result.getErrors()).containsExactly(
+              "isbn 1: Isbn repetido na importação.",
+              "isbn 2: Isbn já cadastrado.");
+      // Um único saveAll para o lote e o livro importado já aparece na busca
+      Mockito.verify(repository, Mockito.times(1)).saveAll(Mockito.anyList());
+      Mockito.verify(repository, Mockito.never()).saveAndFlush(Mockito.any(Book.class));
+      assertThat(searchIndex.search(Book.builder().title("A").build(), PageRequest.of(0, 10)).getContent())
+              .containsExactly(1l);
+  }
+
+  @Test
+  @DisplayName("Deve refazer o lote livro a livro quando o insert em batch violar a unique do isbn")
+  public void importBooksConflictTest(){
+      Book first = Book.builder().isbn("1").title("A").author("Fulano").build();
+      Book second = Book.builder().isbn("2").title("B").author("Fulano").build();
+      when( repository.saveAll(Mockito.anyList()) ).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+      when( repository.saveAndFlush(first) ).thenReturn( Book.builder().id(1l).isbn("1").title("A").build() );
+      when( repository.saveAndFlush(second) ).thenThrow(violation("PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+
+      BookImportResultDTO result = service.importBooks(Arrays.asList(first, second).iterator());
+
+      assertThat(result.getImported()).isEqualTo(1);
+      assertThat(result.getErrors()).containsExactly("isbn 2: Isbn já cadastrado.");
+  }
+
+  @Test
+  @DisplayName("Na importação, um livro que não cabe nas colunas deve ser recusado pelo motivo certo, sem barrar os outros")
+  public void importBooksOtherViolationTest(){
+      Book first = Book.builder().isbn("1").title("A").author("Fulano").build();
+      Book second = Book.builder().isbn("2").title("B").author("Fulano").build();
+      when( repository.saveAll(Mockito.anyList()) ).thenThrow(violation(null));
+      when( repository.saveAndFlush(first) ).thenReturn( Book.builder().id(1l).isbn("1").title("A").build() );
+      when( repository.saveAndFlush(second) ).thenThrow(violation(null));
+
+      BookImportResultDTO result = service.importBooks(Arrays.asList(first, second).iterator());
+
+      assertThat(result.getImported()).isEqualTo(1);
+      assertThat(result.getErrors()).containsExactly("isbn 2: Livro recusado pelo banco (campo longo demais ou inválido).");
+  }
+
+  @Test
+  @DisplayName("Deve obter a disponibilidade de um livro só pelos índices em memória")
+  public void getAvailabilityTest(){
+      searchIndex.add(Book.builder().id(1l).isbn("123").title("A").author("Fulano").build());
+      searchIndex.add(Book.builder().id(2l).isbn("456").title("B").author("Fulano").build());
+      availabilityIndex.update(Loan.builder().id(9l).book(Book.builder().id(2l).build()).build());
+
+      assertThat(service.getAvailability(1l)).contains(new BookAvailabilityDTO(1l, "123", true));
+      assertThat(service.getAvailability(3l)).isEmpty();
+      assertThat(service.getAvailability(3_000_000_000l)).isEmpty(); // fora da faixa dos índices: 404, não 500
+      assertThat(service.getAvailability(Arrays.asList("456", "000", "123"))).containsExactly(
+              new BookAvailabilityDTO(2l, "456", false),
+              new BookAvailabilityDTO(null, "000", false),
+              new BookAvailabilityDTO(1l, "123", true));
+      Mockito.verifyNoInteractions(repository);
+  }
+
   // metodo privado
 
   private Book createValidBook() {
       return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
   }
 
-}
\ No newline at end of file
+
+  // Como o Spring entrega a violação: DataIntegrityViolationException com a ConstraintViolationException do Hibernate
+  private static DataIntegrityViolationException violation(String constraint){
+      return new DataIntegrityViolationException("could not execute statement",
+              new ConstraintViolationException("could not execute statement", null, constraint));
+  }
+}
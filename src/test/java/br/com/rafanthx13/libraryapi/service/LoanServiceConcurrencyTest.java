@@ -0,0 +1,172 @@
+package br.com.rafanthx13.libraryapi.service;
+
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+import br.com.rafanthx13.libraryapi.exception.BusinessException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+// Teste de integração (H2 de verdade): muitas threads tentando emprestar o mesmo livro ao mesmo tempo
+// e escritas concorrentes no mesmo empréstimo (@Version)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+public class LoanServiceConcurrencyTest {
+
+    static final int THREADS = 32;
+
+    @Autowired
+    LoanService service;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @AfterEach
+    public void tearDown(){
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o livro para uma única thread quando várias tentam ao mesmo tempo")
+    public void concurrentLoansForSameBookTest() throws Exception {
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("123").build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger loaned = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            String customer = "Cliente " + i;
+            futures.add(executor.submit(() -> {
+                start.await(); // todas as threads disparam juntas
+                try {
+                    service.save(Loan.builder().book(book).customer(customer).loanDate(LocalDate.now()).build());
+                    loaned.incrementAndGet();
+                } catch (BusinessException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(loaned.get()).isEqualTo(1);
+        assertThat(rejected.get()).isEqualTo(THREADS - 1);
+        assertThat(loanRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Devoluções em lote simultâneas devem devolver cada empréstimo uma única vez")
+    public void concurrentBatchReturnsTest() throws Exception {
+        List<LoanDTO> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            bookRepository.save(Book.builder().title("Livro " + i).author("Fulano").isbn("isbn-" + i).build());
+            requests.add(LoanDTO.builder().isbn("isbn-" + i).customer("Cliente " + i).email("cliente@email.com").build());
+        }
+        List<Long> ids = service.checkout(requests).stream().map(LoanItemResultDTO::getId).collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<LoanItemResultDTO>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return service.returnLoans(ids);
+            }));
+        }
+        start.countDown();
+        long returned = 0;
+        for (Future<List<LoanItemResultDTO>> future : futures) {
+            returned += future.get(30, TimeUnit.SECONDS).stream()
+                    .filter(result -> result.getStatus() == LoanItemResultDTO.Status.RETURNED)
+                    .count();
+        }
+        executor.shutdown();
+
+        assertThat(returned).isEqualTo(ids.size());
+        assertThat(loanRepository.findActiveBookIds(
+                bookRepository.findAll().stream().map(Book::getId).collect(Collectors.toList()))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Duas escritas a partir da mesma versão: a segunda deve ser recusada pelo @Version")
+    public void staleUpdateTest(){
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("123").build());
+        Loan saved = service.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        Loan first = service.getById(saved.getId()).get();
+        Loan second = service.getById(saved.getId()).get();
+
+        first.setReturned(true);
+        service.update(first);
+        second.setCustomer("Ciclano");
+        Throwable exception = catchThrowable(() -> service.update(second));
+
+        assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(loanRepository.findById(saved.getId()).get().getCustomer()).isEqualTo("Fulano");
+    }
+
+    @Test
+    @DisplayName("Devolução condicional deve valer só para a versão informada e incrementar a versão")
+    public void conditionalReturnTest(){
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("123").build());
+        Loan saved = service.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        long version = saved.getVersion();
+
+        assertThat(service.returnLoan(saved.getId(), Arrays.asList(version + 1))).isEqualTo(LoanItemResultDTO.Status.MODIFIED);
+        assertThat(service.returnLoan(saved.getId(), Arrays.asList(version))).isEqualTo(LoanItemResultDTO.Status.RETURNED);
+        assertThat(service.returnLoan(saved.getId(), Arrays.asList(version + 1))).isEqualTo(LoanItemResultDTO.Status.ALREADY_RETURNED);
+        assertThat(service.returnLoan(-1l, Arrays.asList(version))).isEqualTo(LoanItemResultDTO.Status.NOT_FOUND);
+        assertThat(loanRepository.findById(saved.getId()).get().getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    @DisplayName("Só a unique do empréstimo ativo vira 'livro já emprestado': customer longo demais continua erro do banco")
+    public void otherViolationIsNotBookAlreadyLoanedTest(){
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("123").build());
+        String customer = String.join("", Collections.nCopies(101, "x")); // a coluna é varchar(100)
+
+        Throwable exception = catchThrowable(() ->
+                service.save(Loan.builder().book(book).customer(customer).loanDate(LocalDate.now()).build()));
+
+        assertThat(exception).isInstanceOf(DataIntegrityViolationException.class).isNotInstanceOf(BusinessException.class);
+    }
+}
@@ -1,18 +1,28 @@
 package br.com.rafanthx13.libraryapi.service;
 
+import br.com.rafanthx13.libraryapi.data.dto.BookDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanDTO;
 import br.com.rafanthx13.libraryapi.data.dto.LoanFilterDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanItemResultDTO;
+import br.com.rafanthx13.libraryapi.data.dto.LoanStatisticsDTO;
 import br.com.rafanthx13.libraryapi.exception.BusinessException;
 import br.com.rafanthx13.libraryapi.data.entity.Book;
 import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
 import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
 import br.com.rafanthx13.libraryapi.service.impl.LoanServiceImpl;
+import br.com.rafanthx13.libraryapi.service.index.BookAvailabilityIndex;
+import br.com.rafanthx13.libraryapi.service.index.LoanStatisticsIndex;
+import br.com.rafanthx13.libraryapi.service.index.OverdueLoanIndex;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.hibernate.exception.ConstraintViolationException;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -22,6 +32,7 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,9 +49,21 @@ public class LoanServiceTest {
     @MockBean // Vai criar instância Mock dessa interface
     LoanRepository repository;
 
+    @MockBean
+    BookRepository bookRepository;
+
+    OverdueLoanIndex overdueIndex;
+
+    BookAvailabilityIndex availabilityIndex;
+
+    LoanStatisticsIndex statisticsIndex;
+
     @BeforeEach // Antes de cada test, criar a implementação  do service
     public void setUp(){
-        this.service = new LoanServiceImpl(repository);
+        this.overdueIndex = new OverdueLoanIndex(repository);
+        this.availabilityIndex = new BookAvailabilityIndex(repository);
+        this.statisticsIndex = new LoanStatisticsIndex(repository, 10);
+        this.service = new LoanServiceImpl(repository, bookRepository, overdueIndex, availabilityIndex, statisticsIndex, 4);
     }
 
     // POST : Inserir Empréstimo
@@ -65,9 +88,8 @@ public class LoanServiceTest {
                 .book(book).build();
 
 
-        when( repository.existsByBookAndNotReturned(book) ).thenReturn(false);
         // Quando salvar o savingLoan, vai retornar o savedLoan simulando o retorno do repository
-        when( repository.save(savingLoan) ).thenReturn( savedLoan ); 
+        when( repository.saveAndFlush(savingLoan) ).thenReturn( savedLoan ); 
 
         Loan loan = service.save(savingLoan); // vai executa os métodos mockados linhas atrás
 
@@ -89,8 +111,8 @@ public class LoanServiceTest {
                         .loanDate(LocalDate.now())
                         .build();
 
-        // Vai retornar true, querendo dizer que já está emprestado
-        when(repository.existsByBookAndNotReturned(book)).thenReturn(true);
+        // O insert viola a unique do livro emprestado, querendo dizer que já está emprestado
+        when(repository.saveAndFlush(savingLoan)).thenThrow(violation("PUBLIC.UK_LOAN_ACTIVE_BOOK_ID_INDEX_2"));
 
         Throwable exception = catchThrowable(() -> service.save(savingLoan));
 
@@ -98,11 +120,23 @@ public class LoanServiceTest {
                 .isInstanceOf(BusinessException.class)
                 .hasMessage("Book already loaned");
 
-        // Garanto que ele nâo executou o save, pois nesse caso, como já está emprestado, não deve salvar
-        verify(repository, never()).save(savingLoan);
+        // Garanto que não houve consulta antes do insert: a regra fica só na constraint do banco
+        verify(repository, never()).existsByBookAndNotReturned(book);
 
     }
 
+    @Test
+    @DisplayName("Outras violações do banco (ex: customer longo demais) não devem virar 'livro já emprestado'")
+    public void otherViolationSaveTest(){
+        Loan savingLoan = Loan.builder().book(Book.builder().id(1l).build()).customer("Fulano").build();
+        DataIntegrityViolationException violation = violation(null);
+        when(repository.saveAndFlush(savingLoan)).thenThrow(violation);
+
+        Throwable exception = catchThrowable(() -> service.save(savingLoan));
+
+        assertThat(exception).isSameAs(violation);
+    }
+
     // PATH : Devolver um Livro
 
     @Test
@@ -112,12 +146,12 @@ public class LoanServiceTest {
         loan.setId(1l);
         loan.setReturned(true);
 
-        when( repository.save(loan) ).thenReturn( loan );
+        when( repository.saveAndFlush(loan) ).thenReturn( loan );
 
         Loan updatedLoan = service.update(loan);
 
         assertThat(updatedLoan.getReturned()).isTrue();
-        verify(repository).save(loan);
+        verify(repository).saveAndFlush(loan);
     }
 
     // GET
@@ -167,9 +201,7 @@ public class LoanServiceTest {
         List<Loan> lista = Arrays.asList(loan);
         Page<Loan> page = new PageImpl<Loan>(lista, pageRequest, lista.size());
         // Mockar a busca paginada
-        when( repository.findByBookIsbnOrCustomer( Mockito.anyString(), Mockito.anyString(), 
-            Mockito.any(PageRequest.class))
-        ).thenReturn(page);
+        when( repository.findByFilter( loanFilterDTO, pageRequest ) ).thenReturn(page);
         // Execução
         Page<Loan> result = service.find( loanFilterDTO, pageRequest );
         //verificacoes
@@ -180,6 +212,168 @@ public class LoanServiceTest {
     }
 
     // Cria um livro e um empréstimo, só falta id
+    // GET : Empréstimos atrasados
+
+    @Test
+    @DisplayName("Deve obter os empréstimos atrasados a partir do índice, sem varrer a tabela")
+    public void getLateLoansTest(){
+        Loan late = createLoan();
+        late.setId(1l);
+        late.setLoanDate(LocalDate.now().minusDays(5));
+        Loan onTime = createLoan();
+        onTime.setId(2l);
+        when( repository.saveAndFlush(late) ).thenReturn( late );
+        when( repository.saveAndFlush(onTime) ).thenReturn( onTime );
+        service.save(late);
+        service.save(onTime);
+        when( repository.findWithBookByIdIn(Arrays.asList(1l)) ).thenReturn( Arrays.asList(late) );
+
+        Page<Loan> result = service.getLateLoans( PageRequest.of(0, 10) );
+
+        assertThat(result.getContent()).containsExactly(late);
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        verify(repository, never()).findByLoanDateLessThanAndNotReturned(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Empréstimo devolvido deve sair da lista de atrasados")
+    public void returnedLoanIsNotLateTest(){
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setLoanDate(LocalDate.now().minusDays(5));
+        when( repository.saveAndFlush(loan) ).thenReturn( loan );
+        service.save(loan);
+
+        loan.setReturned(true);
+        service.update(loan);
+
+        Page<Loan> result = service.getLateLoans( PageRequest.of(0, 10) );
+
+        assertThat(result.getContent()).isEmpty();
+        assertThat(result.getTotalElements()).isZero();
+        verify(repository, never()).findWithBookByIdIn(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve devolver um empréstimo com um update direto, sem carregar a entidade")
+    public void returnLoanTest(){
+        when( repository.markReturnedById(1l) ).thenReturn(1);
+
+        assertThat(service.returnLoan(1l)).isEqualTo(LoanItemResultDTO.Status.RETURNED);
+        verify(repository, never()).findById(Mockito.anyLong());
+        verify(repository, never()).save(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Empréstimo salvo e devolvido deve marcar e liberar o livro no índice de disponibilidade")
+    public void availabilityIndexTest(){
+        Book book = Book.builder().id(7l).build();
+        Loan saved = Loan.builder().id(1l).book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+        when( repository.saveAndFlush(Mockito.any(Loan.class)) ).thenReturn(saved);
+        when( repository.markReturnedById(1l) ).thenReturn(1);
+
+        service.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        assertThat(availabilityIndex.isAvailable(7l)).isFalse();
+
+        service.returnLoan(1l);
+        assertThat(availabilityIndex.isAvailable(7l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Estatísticas devem acompanhar empréstimo e devolução, lendo do banco só os livros do resultado")
+    public void getStatisticsTest(){
+        Book book = Book.builder().id(7l).build();
+        Loan saved = Loan.builder().id(1l).book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+        when( repository.saveAndFlush(Mockito.any(Loan.class)) ).thenReturn(saved);
+        when( repository.markReturnedById(1l) ).thenReturn(1);
+        when( bookRepository.findProjectedByIdIn(Collections.singleton(7l)) )
+                .thenReturn( Collections.singletonList(new BookDTO(7l, "Aventuras", "Fulano", "123")) );
+
+        service.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        assertThat(service.getCustomerStatistics("Fulano").getActiveLoans()).isEqualTo(1);
+
+        service.returnLoan(1l);
+        LoanStatisticsDTO statistics = service.getStatistics(10);
+
+        assertThat(statistics.getTotalLoans()).isEqualTo(1);
+        assertThat(statistics.getActiveLoans()).isZero();
+        assertThat(statistics.getReturnRate()).isEqualTo(1.0);
+        assertThat(statistics.getMostBorrowed()).hasSize(1);
+        assertThat(statistics.getMostBorrowed().get(0).getBook().getTitle()).isEqualTo("Aventuras");
+        assertThat(statistics.getMostBorrowed().get(0).getLoans()).isEqualTo(1);
+        assertThat(service.getCustomerStatistics("Fulano").getActiveLoans()).isZero();
+        verify(repository, never()).count();
+    }
+
+    @Test
+    @DisplayName("Deve informar empréstimo inexistente ou já devolvido pela quantidade de linhas alteradas")
+    public void returnLoanNotUpdatedTest(){
+        when( repository.markReturnedById(Mockito.anyLong()) ).thenReturn(0);
+        when( repository.existsById(1l) ).thenReturn(true);
+        when( repository.existsById(2l) ).thenReturn(false);
+
+        assertThat(service.returnLoan(1l)).isEqualTo(LoanItemResultDTO.Status.ALREADY_RETURNED);
+        assertThat(service.returnLoan(2l)).isEqualTo(LoanItemResultDTO.Status.NOT_FOUND);
+    }
+
+    // Operações em lote
+
+    @Test
+    @DisplayName("Deve emprestar em lote, com o resultado de cada pedido")
+    public void checkoutTest(){
+        Book free = Book.builder().id(1l).isbn("001").build();
+        Book loaned = Book.builder().id(2l).isbn("002").build();
+        when( bookRepository.findByIsbnIn(Mockito.anyCollection()) ).thenReturn( Arrays.asList(free, loaned) );
+        when( repository.findActiveBookIds(Mockito.anyCollection()) ).thenReturn( Arrays.asList(2l) );
+        when( repository.saveAll(Mockito.anyList()) ).thenAnswer( invocation -> {
+            List<Loan> loans = invocation.getArgument(0);
+            loans.forEach(loan -> loan.setId(10l));
+            return loans;
+        });
+
+        List<LoanItemResultDTO> results = service.checkout(Arrays.asList(
+                LoanDTO.builder().isbn("001").customer("Fulano").email("fulano@email.com").build(),
+                LoanDTO.builder().isbn("002").customer("Ciclano").build(),
+                LoanDTO.builder().isbn("003").customer("Beltrano").build(),
+                LoanDTO.builder().isbn("001").customer("Outro").build()));
+
+        assertThat(results).extracting(LoanItemResultDTO::getStatus).containsExactly(
+                LoanItemResultDTO.Status.CREATED, LoanItemResultDTO.Status.ALREADY_LOANED,
+                LoanItemResultDTO.Status.BOOK_NOT_FOUND, LoanItemResultDTO.Status.ALREADY_LOANED);
+        assertThat(results.get(0).getId()).isEqualTo(10l);
+        verify(repository).saveAll( Mockito.argThat((List<Loan> loans) -> loans.size() == 1
+                && "fulano@email.com".equals(loans.get(0).getCustomerEmail())) );
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio se o lote violar o empréstimo ativo único")
+    public void checkoutConflictTest(){
+        Book book = Book.builder().id(1l).isbn("001").build();
+        when( bookRepository.findByIsbnIn(Mockito.anyCollection()) ).thenReturn( Arrays.asList(book) );
+        Mockito.doThrow(violation("PUBLIC.UK_LOAN_ACTIVE_BOOK_ID_INDEX_2")).when(repository).flush();
+
+        Throwable exception = catchThrowable(() -> service.checkout(Arrays.asList(
+                LoanDTO.builder().isbn("001").customer("Fulano").build())));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+    }
+
+    @Test
+    @DisplayName("Deve devolver em lote com um update só, informando cada id")
+    public void returnLoansTest(){
+        when( repository.findReturnStateByIdIn(Mockito.anyCollection()) ).thenReturn( Arrays.asList(
+                new Object[]{ 1l, false }, new Object[]{ 2l, true }, new Object[]{ 4l, null }) );
+
+        List<LoanItemResultDTO> results = service.returnLoans(Arrays.asList(1l, 2l, 3l, 4l, 1l));
+
+        assertThat(results).extracting(LoanItemResultDTO::getStatus).containsExactly(
+                LoanItemResultDTO.Status.RETURNED, LoanItemResultDTO.Status.ALREADY_RETURNED,
+                LoanItemResultDTO.Status.NOT_FOUND, LoanItemResultDTO.Status.RETURNED,
+                LoanItemResultDTO.Status.ALREADY_RETURNED);
+        verify(repository).markReturned(Arrays.asList(1l, 4l));
+        verify(repository, never()).save(Mockito.any());
+    }
+
     public static Loan createLoan(){
         Book book = Book.builder().id(1l).build();
         String customer = "Fulano";
@@ -190,4 +384,10 @@ public class LoanServiceTest {
                         .loanDate(LocalDate.now())
                         .build();
     }
-}
\ No newline at end of file
+
+    // Como o Spring entrega a violação: DataIntegrityViolationException com a ConstraintViolationException do Hibernate
+    private static DataIntegrityViolationException violation(String constraint){
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", null, constraint));
+    }
+}
@@ -0,0 +1,90 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookAvailabilityIndexTest {
+
+    BookAvailabilityIndex index;
+
+    @MockBean
+    LoanRepository repository;
+
+    @BeforeEach
+    public void setUp(){
+        this.index = new BookAvailabilityIndex(repository);
+        index.update(loan(1l, 10l));
+        index.update(loan(2l, 20l));
+    }
+
+    @Test
+    @DisplayName("Livro com empréstimo em aberto deve ficar indisponível")
+    public void isAvailableTest(){
+        assertThat(index.isAvailable(10l)).isFalse();
+        assertThat(index.isAvailable(20l)).isFalse();
+        assertThat(index.isAvailable(30l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Devolução deve liberar o livro, pelo id do empréstimo")
+    public void closeTest(){
+        index.close(1l);
+        Loan returned = loan(2l, 20l);
+        returned.setReturned(true);
+        index.update(returned);
+
+        assertThat(index.isAvailable(10l)).isTrue();
+        assertThat(index.isAvailable(20l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve consultar vários livros de uma vez, id null como indisponível")
+    public void areAvailableTest(){
+        boolean[] result = index.areAvailable(Arrays.asList(10l, 30l, null));
+
+        assertThat(result).containsExactly(false, true, false);
+    }
+
+    @Test
+    @DisplayName("Id fora da faixa do bitmap deve ser tratado como livro não indexado, sem erro")
+    public void outOfRangeIdTest(){
+        assertThat(index.isAvailable(3_000_000_000l)).isFalse();
+        assertThat(index.isAvailable(-1l)).isFalse();
+        assertThat(index.areAvailable(Arrays.asList(3_000_000_000l, 30l))).containsExactly(false, true);
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir a partir dos empréstimos ativos do banco")
+    public void rebuildTest(){
+        when( repository.findActiveAfter(Mockito.eq(0l), Mockito.any()) )
+                .thenReturn( Collections.singletonList(new Object[]{ 5l, 50l }) );
+        when( repository.findActiveAfter(Mockito.eq(5l), Mockito.any()) ).thenReturn( Collections.emptyList() );
+
+        index.rebuild();
+
+        assertThat(index.isAvailable(10l)).isTrue();
+        assertThat(index.isAvailable(50l)).isFalse();
+    }
+
+    private static Loan loan(Long id, Long bookId){
+        return Loan.builder().id(id).book(Book.builder().id(bookId).build()).build();
+    }
+}
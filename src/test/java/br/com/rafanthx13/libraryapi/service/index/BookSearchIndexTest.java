@@ -0,0 +1,165 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.repository.BookKeysetRepository;
+import br.com.rafanthx13.libraryapi.data.repository.BookRepository;
+import br.com.rafanthx13.libraryapi.data.repository.Keyset;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSearchIndexTest {
+
+    BookSearchIndex index;
+
+    @MockBean
+    BookRepository repository;
+
+    @BeforeEach
+    public void setUp(){
+        this.index = new BookSearchIndex(repository);
+        index.add(book(1l, "As aventuras de Pi", "Yann Martel", "001"));
+        index.add(book(2l, "Aventuras na Floresta", "Fulano", "002"));
+        index.add(book(3l, "O Senhor dos Anéis", "Tolkien", "003"));
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros por parte do título ignorando maiúsculas")
+    public void searchByTitleTest(){
+        Page<Long> result = index.search(Book.builder().title("AVENTURA").build(), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).containsExactly(1l, 2l);
+        assertThat(result.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve combinar os filtros de título e autor")
+    public void searchByTitleAndAuthorTest(){
+        Book filter = Book.builder().title("aventuras").author("fulano").build();
+
+        Page<Long> result = index.search(filter, PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).containsExactly(2l);
+    }
+
+    @Test
+    @DisplayName("Deve buscar por termos menores que um trigrama")
+    public void searchByShortTermTest(){
+        Page<Long> result = index.search(Book.builder().isbn("3").build(), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).containsExactly(3l);
+    }
+
+    @Test
+    @DisplayName("Deve paginar e ordenar o resultado")
+    public void searchPagedAndSortedTest(){
+        Pageable pageable = PageRequest.of(1, 1, Sort.by("title").descending());
+
+        Page<Long> result = index.search(Book.builder().title("a").build(), pageable);
+
+        // "O Senhor dos Anéis", "Aventuras na Floresta", "As aventuras de Pi"
+        assertThat(result.getContent()).containsExactly(2l);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve refletir a atualização e a remoção de livros")
+    public void updateAndRemoveTest(){
+        index.add(book(1l, "Vida de Pi", "Yann Martel", "001"));
+        index.remove(2l);
+
+        Page<Long> result = index.search(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).isEmpty();
+        assertThat(index.search(Book.builder().title("vida").build(), PageRequest.of(0, 10)).getContent())
+                .containsExactly(1l);
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir o índice a partir do banco")
+    public void rebuildTest(){
+        when( repository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(0l), Mockito.any(Pageable.class)) )
+                .thenReturn(Arrays.asList(book(10l, "Dom Casmurro", "Machado de Assis", "010")));
+        when( repository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(10l), Mockito.any(Pageable.class)) )
+                .thenReturn(Collections.emptyList());
+
+        index.rebuild();
+
+        assertThat(index.search(Book.builder().author("machado").build(), PageRequest.of(0, 10)).getContent())
+                .containsExactly(10l);
+        assertThat(index.search(Book.builder().title("aventuras").build(), PageRequest.of(0, 10)).getContent())
+                .isEmpty();
+    }
+
+    @Test
+    @DisplayName("Não deve ser usado sem filtro de texto ou com ordenação desconhecida")
+    public void supportsTest(){
+        assertThat(index.supports(Book.builder().build(), PageRequest.of(0, 10))).isFalse();
+        assertThat(index.supports(Book.builder().title("x").build(), PageRequest.of(0, 10, Sort.by("loans")))).isFalse();
+        assertThat(index.supports(Book.builder().title("x").build(), PageRequest.of(0, 10, Sort.by("title")))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor a partir da posição do último livro")
+    public void searchAfterTest(){
+        Book filter = Book.builder().title("aventura").build();
+        Keyset keyset = Keyset.of("", Sort.by(Sort.Direction.DESC, "title"), BookKeysetRepository.SORTABLE);
+
+        List<Long> page = index.searchAfter(filter, keyset, 1);
+        List<Long> next = index.searchAfter(filter, keyset.after(book(2l, "Aventuras na Floresta", "Fulano", "002")), 1);
+
+        assertThat(page).containsExactly(2l);
+        assertThat(next).containsExactly(1l);
+    }
+
+    @Test
+    @DisplayName("Deve guardar a versão de cada livro e mudar a revisão do catálogo a cada alteração")
+    public void versionAndRevisionTest(){
+        long revision = index.revision();
+        Book updated = book(1l, "As aventuras de Pi", "Yann Martel", "001");
+        updated.setVersion(4);
+
+        index.add(updated);
+        assertThat(index.versionOf(1l)).isEqualTo(4l);
+        assertThat(index.revision()).isGreaterThan(revision);
+
+        revision = index.revision();
+        index.remove(1l);
+        assertThat(index.versionOf(1l)).isNull();
+        assertThat(index.revision()).isGreaterThan(revision);
+    }
+
+    @Test
+    @DisplayName("Id fora da faixa do índice (int) deve ser tratado como livro inexistente, sem erro")
+    public void outOfRangeIdTest(){
+        long id = 3_000_000_000l;
+
+        assertThat(index.versionOf(id)).isNull();
+        assertThat(index.isbnOf(id)).isNull();
+        assertThat(index.search(Book.builder().id(id).title("aventuras").build(), PageRequest.of(0, 10)).getContent()).isEmpty();
+        index.remove(id);
+    }
+
+    private static Book book(Long id, String title, String author, String isbn) {
+        return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+    }
+}
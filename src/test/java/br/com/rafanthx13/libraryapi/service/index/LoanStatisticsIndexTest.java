@@ -0,0 +1,132 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanStatisticsIndexTest {
+
+    LoanStatisticsIndex index;
+
+    @MockBean
+    LoanRepository repository;
+
+    @BeforeEach
+    public void setUp(){
+        this.index = new LoanStatisticsIndex(repository, 2);
+        index.created(loan(1l, 10l, "Fulano"));
+        index.created(loan(2l, 20l, "Fulano"));
+        index.created(loan(3l, 20l, "Ciclano"));
+    }
+
+    @Test
+    @DisplayName("Empréstimo novo deve contar para o livro e para o customer")
+    public void createdTest(){
+        assertThat(index.loansOf(10l)).isEqualTo(1);
+        assertThat(index.loansOf(20l)).isEqualTo(2);
+        assertThat(index.loansOf(30l)).isZero();
+        assertThat(index.activeLoansOf("Fulano")).isEqualTo(2);
+        assertThat(index.activeLoansOf("Beltrano")).isZero();
+        assertThat(index.summary(10).getTotalLoans()).isEqualTo(3);
+        assertThat(index.summary(10).getActiveLoans()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Devolução deve baixar só os ativos, mantendo o total do livro")
+    public void closeTest(){
+        index.close(1l);
+        Loan returned = loan(2l, 20l, "Fulano");
+        returned.setReturned(true);
+        index.update(returned);
+        index.close(1l); // devolução repetida não conta de novo
+
+        assertThat(index.activeLoansOf("Fulano")).isZero();
+        assertThat(index.loansOf(20l)).isEqualTo(2);
+        assertThat(index.summary(10).getTotalLoans()).isEqualTo(3);
+        assertThat(index.summary(10).getActiveLoans()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve manter os livros mais emprestados em ordem, empate pelo menor id e limitado ao top")
+    public void mostBorrowedTest(){
+        assertThat(index.summary(10).getMostBorrowed()).containsExactly(entry(20l, 2), entry(10l, 1));
+
+        index.created(loan(4l, 5l, "Beltrano"));
+        assertThat(index.summary(10).getMostBorrowed()).containsExactly(entry(20l, 2), entry(5l, 1));
+
+        index.created(loan(5l, 10l, "Beltrano"));
+        index.created(loan(6l, 10l, "Beltrano"));
+        assertThat(index.summary(10).getMostBorrowed()).containsExactly(entry(10l, 3), entry(20l, 2));
+        assertThat(index.summary(1).getMostBorrowed()).containsExactly(entry(10l, 3));
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir a partir das agregações do banco")
+    public void rebuildTest(){
+        when( repository.findMaxId() ).thenReturn(10l);
+        when( repository.countLoansByBook(10l) )
+                .thenReturn( Arrays.asList(new Object[]{ 7l, 4l }, new Object[]{ 8l, 6l }) );
+        when( repository.findOpenCustomersAfter(Mockito.eq(0l), Mockito.eq(10l), Mockito.any()) )
+                .thenReturn( Collections.singletonList(new Object[]{ 9l, "Beltrano" }) );
+        when( repository.findOpenCustomersAfter(Mockito.eq(9l), Mockito.eq(10l), Mockito.any()) ).thenReturn( Collections.emptyList() );
+
+        index.rebuild();
+
+        assertThat(index.loansOf(20l)).isZero();
+        assertThat(index.activeLoansOf("Fulano")).isZero();
+        assertThat(index.activeLoansOf("Beltrano")).isEqualTo(1);
+        assertThat(index.summary(10).getTotalLoans()).isEqualTo(10);
+        assertThat(index.summary(10).getActiveLoans()).isEqualTo(1);
+        assertThat(index.summary(10).getMostBorrowed()).containsExactly(entry(8l, 6), entry(7l, 4));
+    }
+
+    @Test
+    @DisplayName("Mudanças durante o rebuild não devem se perder nem contar duas vezes")
+    public void rebuildWithConcurrentChangesTest(){
+        when( repository.findMaxId() ).thenReturn(10l);
+        // Enquanto o banco é lido: chega o hook do empréstimo 10 (já contado pelo banco), um empréstimo novo (11)
+        // e a devolução do 9 (o banco ainda o leu em aberto). Ninguém espera o rebuild terminar
+        when( repository.countLoansByBook(10l) ).thenAnswer( invocation -> {
+            index.created(loan(10l, 7l, "Beltrano"));
+            index.created(loan(11l, 7l, "Beltrano"));
+            index.close(9l);
+            return Collections.singletonList(new Object[]{ 7l, 4l });
+        });
+        when( repository.findOpenCustomersAfter(Mockito.eq(0l), Mockito.eq(10l), Mockito.any()) )
+                .thenReturn( Arrays.asList(new Object[]{ 9l, "Beltrano" }, new Object[]{ 10l, "Beltrano" }) );
+        when( repository.findOpenCustomersAfter(Mockito.eq(10l), Mockito.eq(10l), Mockito.any()) ).thenReturn( Collections.emptyList() );
+
+        index.rebuild();
+
+        assertThat(index.loansOf(7l)).isEqualTo(5);
+        assertThat(index.activeLoansOf("Beltrano")).isEqualTo(2); // 10 e 11
+        assertThat(index.summary(10).getTotalLoans()).isEqualTo(5);
+        assertThat(index.summary(10).getActiveLoans()).isEqualTo(2);
+
+        // depois da troca, as mudanças vão direto para as contas novas
+        index.created(loan(12l, 7l, "Fulano"));
+        assertThat(index.loansOf(7l)).isEqualTo(6);
+    }
+
+    private static Loan loan(Long id, Long bookId, String customer){
+        return Loan.builder().id(id).customer(customer).book(Book.builder().id(bookId).build()).build();
+    }
+}
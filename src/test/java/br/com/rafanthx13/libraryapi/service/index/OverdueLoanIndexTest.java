@@ -0,0 +1,96 @@
+package br.com.rafanthx13.libraryapi.service.index;
+
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.data.repository.LoanRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OverdueLoanIndexTest {
+
+    static final LocalDate TODAY = LocalDate.of(2020, 5, 10);
+
+    OverdueLoanIndex index;
+
+    @MockBean
+    LoanRepository repository;
+
+    @BeforeEach
+    public void setUp(){
+        this.index = new OverdueLoanIndex(repository);
+        index.update(loan(4l, TODAY.minusDays(2)));
+        index.update(loan(1l, TODAY.minusDays(6)));
+        index.update(loan(3l, TODAY.minusDays(6)));
+        index.update(loan(2l, TODAY.minusDays(5)));
+        index.update(loan(5l, TODAY));
+    }
+
+    @Test
+    @DisplayName("Deve trazer os empréstimos até a data de corte, ordenados por data e id")
+    public void openedOnOrBeforeTest(){
+        Page<Long> result = index.openedOnOrBefore(TODAY.minusDays(4), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).containsExactly(1l, 3l, 2l);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve paginar atravessando os baldes de data")
+    public void openedOnOrBeforePagedTest(){
+        Page<Long> first = index.openedOnOrBefore(TODAY, PageRequest.of(0, 2));
+        Page<Long> second = index.openedOnOrBefore(TODAY, PageRequest.of(1, 2));
+        Page<Long> third = index.openedOnOrBefore(TODAY, PageRequest.of(2, 2));
+
+        assertThat(first.getContent()).containsExactly(1l, 3l);
+        assertThat(second.getContent()).containsExactly(2l, 4l);
+        assertThat(third.getContent()).containsExactly(5l);
+        assertThat(third.getTotalElements()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Empréstimo devolvido ou fechado deve sair do índice")
+    public void closeTest(){
+        Loan returned = loan(1l, TODAY.minusDays(6));
+        returned.setReturned(true);
+        index.update(returned);
+        index.close(3l);
+
+        Page<Long> result = index.openedOnOrBefore(TODAY.minusDays(4), PageRequest.of(0, 10));
+
+        assertThat(result.getContent()).containsExactly(2l);
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir o índice a partir dos empréstimos em aberto do banco")
+    public void rebuildTest(){
+        when( repository.findOpenAfter(Mockito.eq(0l), Mockito.any()) )
+                .thenReturn( Arrays.asList(new Object[]{ 7l, TODAY.minusDays(9) }, new Object[]{ 8l, TODAY }) );
+        when( repository.findOpenAfter(Mockito.eq(8l), Mockito.any()) ).thenReturn( Collections.emptyList() );
+
+        index.rebuild();
+
+        Page<Long> result = index.openedOnOrBefore(TODAY, PageRequest.of(0, 10));
+        assertThat(result.getContent()).containsExactly(7l, 8l);
+    }
+
+    private static Loan loan(Long id, LocalDate loanDate){
+        return Loan.builder().id(id).loanDate(loanDate).build();
+    }
+}
@@ -0,0 +1,110 @@
+package br.com.rafanthx13.libraryapi.service.notification;
+
+import br.com.rafanthx13.libraryapi.data.entity.Book;
+import br.com.rafanthx13.libraryapi.data.entity.Loan;
+import br.com.rafanthx13.libraryapi.service.LoanService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LateLoanNotificationJobTest {
+
+    LateLoanNotificationJob job;
+
+    InMemoryNotificationSender sender;
+
+    MeterRegistry registry;
+
+    @MockBean
+    LoanService loanService;
+
+    @BeforeEach
+    public void setUp(){
+        this.registry = new SimpleMeterRegistry();
+        this.sender = new InMemoryNotificationSender(100);
+        // Executor direto (na própria thread): o teste enxerga os envios assim que o job termina
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sender, Runnable::run, registry);
+        this.job = new LateLoanNotificationJob(loanService, dispatcher, registry);
+    }
+
+    @Test
+    @DisplayName("Deve enviar uma única mensagem por email, juntando os atrasos de todas as páginas")
+    public void notifyGroupedByEmailTest(){
+        PageRequest first = PageRequest.of(0, LateLoanNotificationJob.PAGE_SIZE);
+        when( loanService.getLateLoans(first) ).thenReturn( new PageImpl<>(
+                Arrays.asList(loan(1l, "fulano@email.com", "Livro A"), loan(2l, "ciclano@email.com", "Livro B")),
+                first, LateLoanNotificationJob.PAGE_SIZE + 1) );
+        when( loanService.getLateLoans(first.next()) ).thenReturn( new PageImpl<>(
+                Collections.singletonList(loan(3l, "fulano@email.com", "Livro C")),
+                first.next(), LateLoanNotificationJob.PAGE_SIZE + 1) );
+
+        int dispatched = job.run();
+
+        assertThat(dispatched).isEqualTo(2);
+        List<Notification> sent = sender.getLast();
+        assertThat(sent).extracting(Notification::getTo).containsExactlyInAnyOrder("fulano@email.com", "ciclano@email.com");
+        Notification fulano = sent.stream().filter(n -> n.getTo().equals("fulano@email.com")).findFirst().get();
+        assertThat(fulano.getSubject()).isEqualTo("Empréstimos atrasados (2)");
+        assertThat(fulano.getBody()).contains("Livro A", "Livro C");
+        assertThat(registry.counter("library.notifications.sent").count()).isEqualTo(2);
+        assertThat(registry.counter("library.notifications.loans").count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Empréstimo sem email não deve gerar mensagem")
+    public void loanWithoutEmailTest(){
+        PageRequest first = PageRequest.of(0, LateLoanNotificationJob.PAGE_SIZE);
+        when( loanService.getLateLoans(first) ).thenReturn( new PageImpl<>(
+                Collections.singletonList(loan(1l, null, "Livro A")), first, 1) );
+
+        int dispatched = job.run();
+
+        assertThat(dispatched).isZero();
+        assertThat(sender.getSent()).isZero();
+        assertThat(registry.counter("library.notifications.loans.without.email").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Falha no envio deve ser contada sem interromper os demais envios")
+    public void failedSendTest(){
+        NotificationSender failing = Mockito.mock(NotificationSender.class);
+        Mockito.doThrow(new IllegalStateException("smtp down")).when(failing).send(Mockito.any());
+        NotificationDispatcher dispatcher = new NotificationDispatcher(failing, Runnable::run, registry);
+
+        dispatcher.dispatch(new Notification("fulano@email.com", "assunto", "texto"));
+        dispatcher.dispatch(new Notification("ciclano@email.com", "assunto", "texto"));
+
+        Mockito.verify(failing, Mockito.times(2)).send(Mockito.any());
+        assertThat(registry.counter("library.notifications.failed").count()).isEqualTo(2);
+    }
+
+    private static Loan loan(Long id, String email, String title){
+        return Loan.builder()
+                .id(id)
+                .customer("cliente " + id)
+                .customerEmail(email)
+                .book(Book.builder().id(id).title(title).build())
+                .loanDate(LocalDate.now().minusDays(10))
+                .build();
+    }
+}